@@ -3,6 +3,8 @@ plugins {
     application
     // Use the maintained fork of the Shadow plugin
     id("com.gradleup.shadow") version "8.3.5"
+    // Benchmarks in src/jmh, run with ./gradlew jmh
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "io.github.vegazsk"
@@ -29,4 +31,21 @@ tasks.shadowJar {
     manifest {
         attributes["Main-Class"] = "editor.HighwayEditor"
     }
-}
\ No newline at end of file
+}
+
+// Headless batch mode, e.g. ./gradlew runCli --args="highways.json --validate --round 2 -o out.json"
+tasks.register<JavaExec>("runCli") {
+    group = "application"
+    description = "Runs the headless highways.json command-line tool."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("editor.cli.HighwayCli")
+    jvmArgs("-Djava.awt.headless=true", "-Xshare:auto", "-XX:TieredStopAtLevel=1")
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    // e.g. ./gradlew jmh -PjmhInclude=Render
+    (findProperty("jmhInclude") as String?)?.let { includes.add(it) }
+    jvmArgsAppend.add("-Djava.awt.headless=true")
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,57 @@
+package editor.bench;
+
+import editor.MapIndex;
+import editor.check.IncrementalValidator;
+import editor.models.*;
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The model side of applying a station edit in the editor: re-linking its connections through the
+ * HighwaysIndex, updating the map's spatial index and re-validating what the edit can affect.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditBenchmark {
+    @Param({"1000/40/64", "10000/200/256", "50000/1000/512"})
+    public String network;
+
+    private HighwaysData data;
+    private HighwaysIndex index;
+    private final MapIndex mapIndex = new MapIndex();
+    private IncrementalValidator validator;
+    private int next;
+
+    @Setup
+    public void setup() {
+        data = SyntheticNetwork.generate(network);
+        index = new HighwaysIndex(data);
+        mapIndex.rebuild(data);
+        validator = new IncrementalValidator(data, index);
+    }
+
+    @Benchmark
+    public Station applyStationChanges() {
+        List<Station> stations = data.stations;
+        Station s = stations.get(next = (next + 1) % stations.size());
+        StationLines rows = s.lines;
+        index.unlink(s);
+        s.lines = new StationLines();
+        for (int i = 0; i < rows.size(); i++) {
+            String cat = rows.category(i), ln = rows.line(i), branch = rows.branch(i);
+            s.lines.put(cat, ln, rows.code(i), branch);
+            LineData.Branch br = data.lines.get(cat).get(ln).branches.get(branch);
+            index.addToBranch(cat, ln, branch, br, s.id);
+            if (!index.hasVertex(br, s.x, s.z)) index.addVertex(br, s.x, s.z);
+        }
+        index.link(s);
+        mapIndex.updateStation(s);
+        validator.stationChanged(s);
+        return s;
+    }
+}
@@ -0,0 +1,61 @@
+package editor.bench;
+
+import editor.io.HighwaysReader;
+import editor.io.HighwaysSnapshot;
+import editor.io.HighwaysWriter;
+import editor.models.HighwaysData;
+import org.openjdk.jmh.annotations.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** Loading and saving highways.json, and reopening through the binary cache. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IoBenchmark {
+    @Param({"1000/40/64", "10000/200/256", "50000/1000/512"})
+    public String network;
+
+    private HighwaysData data;
+    private byte[] json;
+    private Path dir, file;
+
+    @Setup
+    public void setup() throws IOException {
+        data = SyntheticNetwork.generate(network);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HighwaysWriter.write(data, out, true);
+        json = out.toByteArray();
+        dir = Files.createTempDirectory("hw-bench");
+        file = dir.resolve("highways.json");
+        long crc = HighwaysWriter.write(data, file, true);
+        HighwaysSnapshot.write(data, file, Files.size(file), crc);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(HighwaysSnapshot.sidecar(file));
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public HighwaysData loadJson() throws IOException { return HighwaysReader.read(new ByteArrayInputStream(json), null); }
+
+    @Benchmark
+    public HighwaysData loadSnapshot() { return HighwaysSnapshot.readIfFresh(file); }
+
+    @Benchmark
+    public void savePretty() throws IOException { HighwaysWriter.write(data, OutputStream.nullOutputStream(), true); }
+
+    @Benchmark
+    public void saveCompact() throws IOException { HighwaysWriter.write(data, OutputStream.nullOutputStream(), false); }
+}
@@ -0,0 +1,49 @@
+package editor.bench;
+
+import editor.merge.HighwaysDiff;
+import editor.merge.HighwaysMerge;
+import editor.models.HighwaysData;
+import editor.models.LineData;
+import editor.models.Station;
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Structural diff and three-way merge of two copies of a network, each with edits spread over stations and paths. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeBenchmark {
+    @Param({"1000/40/64", "10000/200/256", "50000/1000/512"})
+    public String network;
+
+    private HighwaysData base, ours, theirs;
+
+    @Setup
+    public void setup() {
+        base = SyntheticNetwork.generate(network);
+        ours = base.copy(); theirs = base.copy();
+        edit(ours, 0); edit(theirs, 1);
+    }
+
+    /** Renames every 100th station and moves the first corner of every 10th line, offset per side. */
+    private static void edit(HighwaysData d, int side) {
+        for (int i = side; i < d.stations.size(); i += 100) { Station s = d.stations.get(i); s.name = s.name + " " + side; }
+        int n = 0;
+        for (Map<String, LineData> cat : d.lines.values()) for (LineData ld : cat.values()) {
+            if (n++ % 10 != side) continue;
+            var v = ld.branches.get("Main line").vertices;
+            v.set(0, v.x(0) + 1, v.z(0));
+        }
+    }
+
+    @Benchmark
+    public List<HighwaysDiff.Change> diff() { return HighwaysDiff.diff(base, ours); }
+
+    @Benchmark
+    public HighwaysMerge.Result merge() { return HighwaysMerge.merge(base, ours, theirs); }
+}
@@ -0,0 +1,72 @@
+package editor.bench;
+
+import editor.MapIndex;
+import editor.SpatialIndex;
+import editor.models.HighwaysData;
+import editor.models.LineData;
+import editor.models.Polyline;
+import org.openjdk.jmh.annotations.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit testing as MapPanel does it: {@code findAt} (nearest station, else nearest line) at an overview zoom,
+ * and {@code hitTestVertex} (nearest staging vertex) over the longest line while editing its path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PickBenchmark {
+    @Param({"1000/40/64", "10000/200/256", "50000/1000/512"})
+    public String network;
+
+    private static final double OVERVIEW_ZOOM = 0.05, EDIT_ZOOM = 0.5;
+    private final MapIndex index = new MapIndex();
+    private final SpatialIndex<double[]> vertices = new SpatialIndex<>();
+    private double[] points, nearVertices;
+    private int next;
+
+    @Setup
+    public void setup() {
+        HighwaysData data = SyntheticNetwork.generate(network);
+        index.rebuild(data);
+        Random rnd = new Random(7);
+        points = new double[2048];
+        for (int i = 0; i < points.length; i++) points[i] = rnd.nextDouble() * 60000 - 30000;
+        LineData longest = null; int most = -1;
+        for (var m : data.lines.values()) for (LineData ld : m.values()) {
+            int n = ld.branches.values().stream().mapToInt(b -> b.vertices.size()).sum();
+            if (n > most) { most = n; longest = ld; }
+        }
+        for (LineData.Branch br : longest.branches.values()) for (int i = 0; i < br.vertices.size(); i++) vertices.insertPoint(new double[]{br.vertices.x(i), br.vertices.z(i)}, br.vertices.x(i), br.vertices.z(i));
+        Polyline main = longest.branches.get("Main line").vertices;
+        nearVertices = new double[2048];
+        for (int i = 0; i < nearVertices.length; i += 2) {
+            int v = rnd.nextInt(main.size());
+            nearVertices[i] = main.x(v) + rnd.nextGaussian() * 10; nearVertices[i+1] = main.z(v) + rnd.nextGaussian() * 10;
+        }
+    }
+
+    @Benchmark
+    public Object findAt() {
+        int i = next = (next + 2) & (points.length - 1);
+        double x = points[i], z = points[i+1];
+        Object s = index.stationAt(x, z, 15 / OVERVIEW_ZOOM);
+        return s != null ? s : index.lineAt(x, z, 5 / OVERVIEW_ZOOM);
+    }
+
+    @Benchmark
+    public double[] hitTestVertex() {
+        int i = next = (next + 2) & (nearVertices.length - 1);
+        double px = nearVertices[i], pz = nearVertices[i+1], r = 8 / EDIT_ZOOM;
+        double[] best = null; double bestD = r;
+        for (double[] v : vertices.query(px - r, pz - r, px + r, pz + r)) {
+            double d = Math.hypot(v[0] - px, v[1] - pz);
+            if (d < bestD) { bestD = d; best = v; }
+        }
+        return best;
+    }
+}
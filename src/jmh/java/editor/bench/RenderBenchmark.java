@@ -0,0 +1,70 @@
+package editor.bench;
+
+import editor.BranchLod;
+import editor.MapIndex;
+import editor.MapRenderer;
+import editor.TileCache;
+import editor.models.HighwaysData;
+import org.openjdk.jmh.annotations.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One 1280x800 frame of the static map layer into an offscreen image, as MapPanel.paintComponent draws it:
+ * straight through the renderer, through the tile cache with every tile re-rendered, and from warm tiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+    @Param({"1000/40/64", "10000/200/256", "50000/1000/512"})
+    public String network;
+
+    @Param({"0.02", "0.2"})
+    public double zoom;
+
+    private static final int W = 1280, H = 800;
+    private HighwaysData data;
+    private final MapIndex index = new MapIndex();
+    private final MapRenderer renderer = new MapRenderer();
+    private final TileCache tiles = new TileCache();
+    private final BranchLod lod = new BranchLod();
+    private final BufferedImage image = new BufferedImage(W, H, BufferedImage.TYPE_INT_ARGB);
+    private long originX, originZ;
+
+    @Setup
+    public void setup() {
+        data = SyntheticNetwork.generate(network);
+        index.rebuild(data);
+        originX = -W / 2; originZ = -H / 2;
+        renderer.setView(zoom, (originX + W / 2) / zoom, (originZ + H / 2) / zoom, W / 2, H / 2);
+        paint(true);
+    }
+
+    private Graphics2D graphics() {
+        Graphics2D g2 = image.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        return g2;
+    }
+
+    private void paint(boolean tiled) {
+        Graphics2D g2 = graphics();
+        try {
+            if (tiled) tiles.paint(g2, renderer, (g, r, w, h) -> r.paintNetwork(g, data, index, lod, null, w, h), zoom, originX, originZ, W, H);
+            else renderer.paintNetwork(g2, data, index, lod, null, W, H);
+        } finally { g2.dispose(); }
+    }
+
+    @Benchmark
+    public BufferedImage paintDirect() { paint(false); return image; }
+
+    @Benchmark
+    public BufferedImage paintTilesCold() { tiles.clear(); paint(true); return image; }
+
+    @Benchmark
+    public BufferedImage paintTilesWarm() { paint(true); return image; }
+}
@@ -0,0 +1,58 @@
+package editor.bench;
+
+import editor.models.HighwaysData;
+import editor.models.HighwaysIndex;
+import editor.models.Station;
+import editor.route.RouteGraph;
+import org.openjdk.jmh.annotations.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the route graph, queries between random stations, and a station edit followed by a query, which
+ * includes rebuilding the station's lines and contracting the graph again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteBenchmark {
+    @Param({"1000/40/64", "10000/200/256", "50000/1000/512"})
+    public String network;
+
+    private HighwaysData data;
+    private HighwaysIndex index;
+    private RouteGraph graph;
+    private Station[] pairs;
+    private int next;
+
+    @Setup
+    public void setup() {
+        data = SyntheticNetwork.generate(network);
+        index = new HighwaysIndex(data);
+        graph = new RouteGraph(data, index);
+        Random rnd = new Random(3);
+        pairs = new Station[1024];
+        for (int i = 0; i < pairs.length; i++) pairs[i] = data.stations.get(rnd.nextInt(data.stations.size()));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public RouteGraph.Route build() { return new RouteGraph(data, index).route(pairs[0], pairs[1]); }
+
+    @Benchmark
+    public RouteGraph.Route route() {
+        int i = next = (next + 2) & (pairs.length - 1);
+        return graph.route(pairs[i], pairs[i+1]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public RouteGraph.Route stationEdit() {
+        int i = next = (next + 2) & (pairs.length - 1);
+        graph.stationChanged(pairs[i]);
+        return graph.route(pairs[i], pairs[i+1]);
+    }
+}
@@ -0,0 +1,47 @@
+package editor.bench;
+
+import editor.SearchIndex;
+import editor.models.HighwaysData;
+import editor.models.Station;
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** The navigation search that replaced {@code filterLists}: building the station index and querying it. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({"1000/40/64", "10000/200/256", "50000/1000/512"})
+    public String network;
+
+    private List<Station> stations;
+    private String[] keys;
+    private SearchIndex<Station> index;
+    private int[] prefixHits;
+
+    @Setup
+    public void setup() {
+        HighwaysData data = SyntheticNetwork.generate(network);
+        stations = data.stations;
+        keys = new String[stations.size()];
+        for (int i = 0; i < keys.length; i++) keys[i] = stations.get(i).name + "\u0001" + stations.get(i).id;
+        index = new SearchIndex<>(stations, keys);
+        prefixHits = index.search("station 1", null);
+    }
+
+    @Benchmark
+    public SearchIndex<Station> buildIndex() { return new SearchIndex<>(stations, keys); }
+
+    @Benchmark
+    public int[] searchShort() { return index.search("st", null); }
+
+    @Benchmark
+    public int[] searchSelective() { return index.search("station 123", null); }
+
+    @Benchmark
+    public int[] searchRefined() { return index.search("station 123", prefixHits); }
+}
@@ -0,0 +1,100 @@
+package editor.bench;
+
+import editor.models.*;
+import java.util.*;
+
+/**
+ * Deterministic generator for benchmark maps. Lines are random orthogonal walks of {@code corners} vertices,
+ * each starting from a vertex of an earlier line where a junction station joins the two, so the network is
+ * connected. Every fifth line gets a second branch forking off its main line. The remaining stations are spread
+ * round-robin over the lines, each placed on a vertex of its line and listed on that branch, so the result
+ * passes validation. The same arguments always produce the same map.
+ */
+public final class SyntheticNetwork {
+    private static final String[] CATEGORIES = {"Ice Highways", "Rail", "Roads", "Ferries"};
+    private static final String[] TYPES = {null, null, null, null, "semi", "jct", "inter"};
+    private static final double WORLD = 30000;
+
+    private SyntheticNetwork() {}
+
+    /** Parses {@code "stations/lines/corners"}, the form the benchmarks take as their size parameter. */
+    public static HighwaysData generate(String spec) {
+        String[] p = spec.split("/");
+        return generate(Integer.parseInt(p[0]), Integer.parseInt(p[1]), Integer.parseInt(p[2]), 42);
+    }
+
+    public static HighwaysData generate(int stations, int lines, int corners, long seed) {
+        Random rnd = new Random(seed);
+        HighwaysData d = new HighwaysData();
+        d.lines = new LinkedHashMap<>();
+        List<String[]> keys = new ArrayList<>();
+        List<double[]> junctions = new ArrayList<>(); // x, z, line, earlier line
+        for (int j = 0; j < lines; j++) {
+            String cat = CATEGORIES[j % CATEGORIES.length], name = "Line " + j;
+            LineData ld = new LineData();
+            ld.code = String.valueOf(j); ld.prefix = cat.substring(0, 1); ld.y = 64 + rnd.nextInt(64);
+            ld.color = String.format("%06x", rnd.nextInt(0x1000000));
+            ld.branches = new LinkedHashMap<>();
+            double sx = Math.round((rnd.nextDouble() * 2 * WORLD - WORLD) * 100) / 100.0, sz = Math.round((rnd.nextDouble() * 2 * WORLD - WORLD) * 100) / 100.0;
+            if (j > 0) {
+                int p = rnd.nextInt(j);
+                Polyline pv = d.lines.get(keys.get(p)[0]).get(keys.get(p)[1]).branches.get("Main line").vertices;
+                int at = rnd.nextInt(pv.size());
+                sx = pv.x(at); sz = pv.z(at);
+                junctions.add(new double[]{sx, sz, j, p});
+            }
+            LineData.Branch main = branch(walk(rnd, sx, sz, corners));
+            ld.branches.put("Main line", main);
+            if (j % 5 == 4 && corners > 2) {
+                int at = rnd.nextInt(main.vertices.size());
+                ld.branches.put("Spur", branch(walk(rnd, main.vertices.x(at), main.vertices.z(at), Math.max(2, corners / 2))));
+            }
+            d.lines.computeIfAbsent(cat, k -> new LinkedHashMap<>()).put(name, ld);
+            keys.add(new String[]{cat, name});
+        }
+        d.stations = new ArrayList<>(stations);
+        for (int i = 0; i < stations && i < junctions.size(); i++) {
+            double[] jn = junctions.get(i);
+            Station s = new Station();
+            s.id = i + 1; s.name = "Junction " + (i + 1); s.x = jn[0]; s.z = jn[1]; s.type = "jct";
+            s.lines = new StationLines();
+            for (int l = 2; l < 4; l++) {
+                String[] key = keys.get((int) jn[l]);
+                s.lines.put(key[0], key[1], "J", "Main line");
+                d.lines.get(key[0]).get(key[1]).branches.get("Main line").stations.add(s.id);
+            }
+            d.stations.add(s);
+        }
+        for (int i = d.stations.size(); i < stations; i++) {
+            String[] key = keys.get(i % keys.size());
+            LineData.Branch br = d.lines.get(key[0]).get(key[1]).branches.get("Main line");
+            int v = rnd.nextInt(br.vertices.size());
+            Station s = new Station();
+            s.id = i + 1; s.name = "Station " + (i + 1); s.x = br.vertices.x(v); s.z = br.vertices.z(v);
+            s.type = TYPES[rnd.nextInt(TYPES.length)];
+            s.lines = new StationLines();
+            s.lines.put(key[0], key[1], String.valueOf(i % 100), "Main line");
+            br.stations.add(s.id);
+            d.stations.add(s);
+        }
+        return d;
+    }
+
+    private static LineData.Branch branch(Polyline vertices) {
+        LineData.Branch b = new LineData.Branch();
+        b.vertices = vertices; b.stations = new ArrayList<>();
+        return b;
+    }
+
+    /** Orthogonal random walk, alternating between x and z legs of 50 to 800 whole blocks from a start rounded like the editor. */
+    private static Polyline walk(Random rnd, double x, double z, int corners) {
+        Polyline p = new Polyline(corners);
+        p.add(x, z);
+        for (int i = 1; i < corners; i++) {
+            double step = (50 + rnd.nextInt(750)) * (rnd.nextBoolean() ? 1 : -1);
+            if (i % 2 == 0) x = Math.max(-WORLD, Math.min(WORLD, x + step)); else z = Math.max(-WORLD, Math.min(WORLD, z + step));
+            p.add(x, z);
+        }
+        return p;
+    }
+}
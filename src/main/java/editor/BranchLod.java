@@ -0,0 +1,52 @@
+package editor;
+
+import editor.models.LineData;
+import editor.models.Polyline;
+import java.awt.geom.Line2D;
+import java.util.*;
+
+/**
+ * Level-of-detail versions of committed branch polylines for drawing zoomed out.
+ * Level L is a Douglas-Peucker simplification with a tolerance of {@code 0.5 * 2^L} world units, which is
+ * at most half a pixel for any zoom in (2^-(L+1), 2^-L]. Levels are built lazily on first use and only
+ * dropped when {@link #invalidate} is called for a branch. The simplified copies live only in this cache;
+ * the model (and the saved JSON) always keeps full precision.
+ */
+public class BranchLod {
+    private static final int MAX_LEVEL = 16;
+    private static final double PIXEL_TOLERANCE = 0.5;
+
+    private final Map<LineData.Branch, Polyline[]> levels = new WeakHashMap<>();
+
+    /** The vertices to draw for a branch at the given zoom; the full list when zoomed in. */
+    public Polyline forZoom(LineData.Branch br, double zoom) {
+        if (zoom >= 1 || br.vertices.size() <= 2) return br.vertices;
+        int level = Math.min(MAX_LEVEL, (int)Math.floor(-Math.log(zoom) / Math.log(2)));
+        Polyline[] cached = levels.computeIfAbsent(br, k -> new Polyline[MAX_LEVEL + 1]);
+        if (cached[level] == null) cached[level] = simplify(br.vertices, PIXEL_TOLERANCE * Math.pow(2, level));
+        return cached[level];
+    }
+
+    public void invalidate(LineData.Branch br) { levels.remove(br); }
+
+    public void clear() { levels.clear(); }
+
+    /** Iterative Douglas-Peucker: keeps the endpoints and every vertex further than {@code tol} from the chord of its span. */
+    static Polyline simplify(Polyline v, double tol) {
+        int n = v.size();
+        boolean[] keep = new boolean[n]; keep[0] = keep[n-1] = true;
+        Deque<int[]> stack = new ArrayDeque<>(); stack.push(new int[]{0, n-1});
+        while (!stack.isEmpty()) {
+            int[] span = stack.pop(); int a = span[0], b = span[1];
+            double ax = v.x(a), az = v.z(a), bx = v.x(b), bz = v.z(b), worst = -1; int idx = -1;
+            for (int i = a + 1; i < b; i++) {
+                double d = Line2D.ptSegDist(ax, az, bx, bz, v.x(i), v.z(i));
+                if (d > worst) { worst = d; idx = i; }
+            }
+            if (idx != -1 && worst > tol) { keep[idx] = true; stack.push(new int[]{a, idx}); stack.push(new int[]{idx, b}); }
+        }
+        Polyline out = new Polyline();
+        for (int i = 0; i < n; i++) if (keep[i]) out.add(v.x(i), v.z(i));
+        return out;
+    }
+}
@@ -1,39 +1,82 @@
 package editor;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import editor.check.HighwaysValidator;
+import editor.check.IncrementalValidator;
+import editor.export.TileExporter;
+import editor.io.EditJournal;
+import editor.io.FileWatcher;
+import editor.io.HighwaysReader;
+import editor.io.HighwaysSnapshot;
+import editor.perf.EditorEvents;
+import editor.perf.PerfStats;
+import editor.route.RouteGraph;
+import editor.io.HighwaysWriter;
+import editor.merge.HighwaysDiff;
+import editor.merge.HighwaysMerge;
 import editor.models.*;
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
-import javax.swing.table.TableCellEditor;
 import java.awt.*;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.dnd.*;
 import java.awt.event.*;
 import java.awt.geom.*;
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 public class HighwayEditor extends JFrame {
     private HighwaysData data;
+    private HighwaysIndex index;
     private File currentFile;
     private boolean saved = false;
+    private long revision = 0;
+    private boolean saving = false, saveQueued = false;
+    // Live reload: the file as last read or written, and the watcher reporting other programs' changes to it
+    private FileWatcher watcher;
+    private File watchedFile;
+    private long diskSize = -1, diskCrc;
+    private boolean reloading = false, reloadQueued = false;
+    private JCheckBoxMenuItem compactJson = new JCheckBoxMenuItem("Compact JSON (no pretty-print)");
+    private JCheckBoxMenuItem binaryCache = new JCheckBoxMenuItem("Keep binary cache for fast opening", true);
+    private JLabel statusLabel = new JLabel(" ");
     
     // Navigation
-    private DefaultListModel<Station> stationListModel = new DefaultListModel<>();
+    private static final String[] SORT_ORDERS = {"Name", "ID", "Category"};
+    private final SortedListModel<Station> stationListModel = new SortedListModel<>(stationOrder(0));
     private JList<Station> stationList = new JList<>(stationListModel);
-    private DefaultListModel<String> lineListModel = new DefaultListModel<>();
+    private final SortedListModel<String> lineListModel = new SortedListModel<>(lineOrder(0));
     private JList<String> lineList = new JList<>(lineListModel);
+    private JComboBox<String> sortBox = new JComboBox<>(SORT_ORDERS);
     private JTabbedPane leftTabs = new JTabbedPane();
     private JTextField searchField = new JTextField();
     
+    // Search: debounced, evaluated on a background thread against an index rebuilt lazily after edits
+    private final javax.swing.Timer searchTimer = new javax.swing.Timer(150, e -> runSearch());
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(r -> { Thread t = new Thread(r, "search"); t.setDaemon(true); return t; });
+    private SearchIndex<Station> stationSearch;
+    private SearchIndex<String> lineSearch;
+    private boolean searchDirty = true;
+    private boolean restoringSelection = false;
+    private long searchGeneration = 0;
+    private String lastQuery = "";
+    private int[] lastStationHits, lastLineHits;
+    
     // Map
     private MapPanel mapPanel;
+    private IncrementalValidator validator;
+    private RouteGraph routes;
+    private EditJournal journal;
+    private final UndoHistory history = new UndoHistory(Long.getLong("editor.undoMegabytes", 64) << 20);
+    private final JMenuItem undoItem = new JMenuItem("Undo"), redoItem = new JMenuItem("Redo");
+    private ProblemsPanel problemsPanel = new ProblemsPanel(this::showProblem);
 
     // Editor Logic
     private CardLayout rightCardLayout = new CardLayout();
@@ -47,38 +90,16 @@ public class HighwayEditor extends JFrame {
     private JLabel stY1Label = new JLabel("Y1:"), stY2Label = new JLabel("Y2:");
     private JPanel elevatorPanel;
     private DefaultTableModel connectionModel = new DefaultTableModel(new Object[]{"Category", "Line", "Map Number", "Branch"}, 0);
-    private JTable connectionTable = new JTable(connectionModel) {
-        public TableCellEditor getCellEditor(int row, int column) {
-            int modelColumn = convertColumnIndexToModel(column);
-            if (data == null) return super.getCellEditor(row, column);
-            if (modelColumn == 0) {
-                JComboBox<String> cb = new JComboBox<>(new Vector<>(data.lines.keySet())); cb.setEditable(true);
-                return new DefaultCellEditor(cb);
-            }
-            if (modelColumn == 1) {
-                String cat = (String) getValueAt(row, 0);
-                Vector<String> lines = new Vector<>();
-                if (cat != null && data.lines.containsKey(cat)) lines.addAll(data.lines.get(cat).keySet());
-                else data.lines.values().forEach(m -> lines.addAll(m.keySet()));
-                JComboBox<String> cb = new JComboBox<>(lines); cb.setEditable(true);
-                return new DefaultCellEditor(cb);
-            }
-            if (modelColumn == 3) {
-                Set<String> branches = new HashSet<>(); branches.add("Main line");
-                String cat = (String) getValueAt(row, 0); String ln = (String) getValueAt(row, 1);
-                if (cat != null && ln != null && data.lines.containsKey(cat) && data.lines.get(cat).containsKey(ln)) branches.addAll(data.lines.get(cat).get(ln).branches.keySet());
-                JComboBox<String> cb = new JComboBox<>(new Vector<>(branches)); cb.setEditable(true);
-                return new DefaultCellEditor(cb);
-            }
-            return super.getCellEditor(row, column);
-        }
-    };
+    private JTable connectionTable = new JTable(connectionModel);
+    private final LineCatalog catalog = new LineCatalog();
     
     // Line Fields
     private JTextField lnCodeField = new JTextField(), lnPrefixField = new JTextField(), lnYField = new JTextField(), lnColorField = new JTextField();
     private JPanel colorPreview = new JPanel();
     private JToggleButton editPathBtn = new JToggleButton("Edit Path");
-    private JCheckBox orthoBox = new JCheckBox("Orthogonal Snap");
+    private JCheckBox orthoBox = new JCheckBox("Orthogonal Snap", true);
+    private JCheckBox guideBox = new JCheckBox("Snap to Guides", true);
+    private JComboBox<String> gridBox = new JComboBox<>(new String[]{"No grid", "Grid 8", "Grid 16", "Grid 64"});
     
     // Vertex Editing Fields
     private JTextField vertXField = new JTextField(), vertZField = new JTextField();
@@ -89,6 +110,9 @@ public class HighwayEditor extends JFrame {
         setSize(1400, 900);
         setMinimumSize(new Dimension(1000, 750));
         setDefaultCloseOperation(EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowClosing(WindowEvent e) { if (journal != null) journal.close(); if (watcher != null) watcher.close(); }
+        });
         setLocationRelativeTo(null);
 
         // --- MENU BAR ---
@@ -105,13 +129,63 @@ public class HighwayEditor extends JFrame {
         file.add(open);
         file.add(save);
         file.add(saveAs);
+        file.addSeparator();
+        JMenuItem compare = new JMenuItem("Compare With...");
+        compare.addActionListener(e -> compareWithFile());
+        JMenuItem merge = new JMenuItem("Merge...");
+        merge.addActionListener(e -> mergeFiles());
+        file.add(compare);
+        file.add(merge);
+        JMenuItem exportTiles = new JMenuItem("Export Tiles...");
+        exportTiles.addActionListener(e -> exportTiles());
+        file.add(exportTiles);
+        file.addSeparator();
+        file.add(compactJson);
+        file.add(binaryCache);
         menuBar.add(file);
+        JMenu edit = new JMenu("Edit");
+        int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut));
+        undoItem.addActionListener(e -> undoRedo(true));
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut));
+        redoItem.addActionListener(e -> undoRedo(false));
+        edit.add(undoItem);
+        edit.add(redoItem);
+        menuBar.add(edit);
+        updateUndoMenu();
+        JMenu view = new JMenu("View");
+        JCheckBoxMenuItem perfOverlay = new JCheckBoxMenuItem("Performance Overlay");
+        perfOverlay.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0));
+        perfOverlay.addActionListener(e -> mapPanel.setPerfOverlay(perfOverlay.isSelected()));
+        view.add(perfOverlay);
+        menuBar.add(view);
+        JMenu tools = new JMenu("Tools");
+        JMenuItem findRoute = new JMenuItem("Find Route...");
+        findRoute.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_R, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        findRoute.addActionListener(e -> findRoute());
+        tools.add(findRoute);
+        menuBar.add(tools);
 
         // --- LEFT PANEL ---
         JPanel leftPanel = new JPanel(new BorderLayout());
         leftPanel.setBorder(new TitledBorder("Navigation"));
-        searchField.addCaretListener(e -> filterLists(searchField.getText()));
-        leftPanel.add(searchField, BorderLayout.NORTH);
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { searchTimer.restart(); } public void removeUpdate(DocumentEvent e) { searchTimer.restart(); } public void changedUpdate(DocumentEvent e) { searchTimer.restart(); }
+        });
+        sortBox.addActionListener(e -> {
+            // Re-select what was selected without re-populating the editors, which may hold unapplied edits
+            Station s = stationList.getSelectedValue(); String l = lineList.getSelectedValue();
+            restoringSelection = true;
+            try {
+                stationListModel.setComparator(stationOrder(sortBox.getSelectedIndex())); lineListModel.setComparator(lineOrder(sortBox.getSelectedIndex()));
+                if (s != null) stationList.setSelectedValue(s, true);
+                if (l != null) lineList.setSelectedValue(l, true);
+            } finally { restoringSelection = false; }
+        });
+        JPanel searchPanel = new JPanel(new BorderLayout(4, 0));
+        searchPanel.add(searchField, BorderLayout.CENTER); searchPanel.add(sortBox, BorderLayout.EAST);
+        leftPanel.add(searchPanel, BorderLayout.NORTH);
         leftTabs.addTab("Stations", new JScrollPane(stationList));
         leftTabs.addTab("Lines", new JScrollPane(lineList));
         leftPanel.add(leftTabs, BorderLayout.CENTER);
@@ -130,8 +204,8 @@ public class HighwayEditor extends JFrame {
         mapPanel = new MapPanel();
         mapPanel.setVertexSelectionListener(v -> {
             if (v != null) {
-                vertXField.setText(String.format(Locale.US, "%.2f", v[0]));
-                vertZField.setText(String.format(Locale.US, "%.2f", v[1]));
+                vertXField.setText(String.format(Locale.US, "%.2f", v.getX()));
+                vertZField.setText(String.format(Locale.US, "%.2f", v.getY()));
                 vertXField.setEnabled(true); vertZField.setEnabled(true); vertUpdateBtn.setEnabled(true);
             } else {
                 vertXField.setText(""); vertZField.setText("");
@@ -142,13 +216,16 @@ public class HighwayEditor extends JFrame {
             stXField.setText(String.format(Locale.US, "%.2f", s.x));
             stZField.setText(String.format(Locale.US, "%.2f", s.z));
         });
-        mapContainer.add(mapPanel, BorderLayout.CENTER);
+        JSplitPane mapSplit = new JSplitPane(JSplitPane.VERTICAL_SPLIT, mapPanel, problemsPanel);
+        mapSplit.setResizeWeight(1.0); mapSplit.setDividerLocation(680);
+        mapContainer.add(mapSplit, BorderLayout.CENTER);
         JButton deselectBtn = new JButton("Clear Selection");
         deselectBtn.addActionListener(e -> mapPanel.clearHighlight());
         mapContainer.add(deselectBtn, BorderLayout.SOUTH);
         
         // --- RIGHT EDITOR ---
         rightEditorContainer.add(createStationEditor(), "STATION_EDIT");
+        setupTableEditors();
         rightEditorContainer.add(createLineEditor(), "LINE_EDIT");
         
         JPanel actionPanel = new JPanel(new GridLayout(2, 1, 2, 2));
@@ -171,6 +248,8 @@ public class HighwayEditor extends JFrame {
         mainSplit.setDividerLocation(1050);
         setJMenuBar(menuBar);
         add(mainSplit);
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        add(statusLabel, BorderLayout.SOUTH);
 
         // --- EVENTS ---
         leftTabs.addChangeListener(e -> {
@@ -182,14 +261,14 @@ public class HighwayEditor extends JFrame {
         });
         stationList.addListSelectionListener(e -> {
             Station s = stationList.getSelectedValue();
-            if (s != null && !e.getValueIsAdjusting()) {
+            if (s != null && !e.getValueIsAdjusting() && !restoringSelection) {
                 populateStationEditor(s);
                 mapPanel.highlightStation(s, true);
             }
         });
         lineList.addListSelectionListener(e -> {
             String sel = lineList.getSelectedValue();
-            if (sel != null && !e.getValueIsAdjusting()) {
+            if (sel != null && !e.getValueIsAdjusting() && !restoringSelection) {
                 populateLineEditor(sel);
                 mapPanel.highlightLine(sel, true);
             }
@@ -287,6 +366,12 @@ public class HighwayEditor extends JFrame {
         });
         toolPanel.add(editPathBtn);
         
+        JPanel snapPanel = new JPanel(new GridLayout(1, 3, 2, 0));
+        orthoBox.addActionListener(e -> mapPanel.orthogonal = orthoBox.isSelected());
+        guideBox.addActionListener(e -> mapPanel.guides = guideBox.isSelected());
+        gridBox.addActionListener(e -> mapPanel.setSnapGrid(new int[]{0, 8, 16, 64}[gridBox.getSelectedIndex()]));
+        snapPanel.add(orthoBox); snapPanel.add(guideBox); snapPanel.add(gridBox);
+        toolPanel.add(snapPanel);
         
         JButton resetPathBtn = new JButton("Reset Path (Revert to Saved)");
         resetPathBtn.addActionListener(e -> mapPanel.resetCurrentPath());
@@ -341,7 +426,7 @@ public class HighwayEditor extends JFrame {
         stY2Field.setText(s.y2 != null ? String.valueOf(s.y2) : "");
         toggleElevatorFields();
         connectionModel.setRowCount(0);
-        if (s.lines != null) s.lines.forEach((cat, lines) -> lines.forEach((ln, det) -> connectionModel.addRow(new Object[]{cat, ln, det[0], det[1]})));
+        if (s.lines != null) for (int i = 0; i < s.lines.size(); i++) connectionModel.addRow(new Object[]{s.lines.category(i), s.lines.line(i), s.lines.code(i), s.lines.branch(i)});
     }
     
     private void populateLineEditor(String sel) {
@@ -356,11 +441,14 @@ public class HighwayEditor extends JFrame {
     
     private void applyChanges() {
         if (data == null) return;
+        EditorEvents.ApplyChanges ev = new EditorEvents.ApplyChanges(); ev.begin(); long t0 = System.nanoTime();
         try {
             if (leftTabs.getSelectedIndex() == 0) {
                 Station s = stationList.getSelectedValue(); if (s == null) return;
+                ev.target = "station " + s.id; ev.connections = connectionModel.getRowCount();
                 if (connectionTable.isEditing()) connectionTable.getCellEditor().stopCellEditing();
-                s.name = stNameField.getText();
+                Station before = s.copy(); List<BranchAppend> appends = new ArrayList<>();
+                s.name = stNameField.getText(); searchDirty = true;
                 s.x = Math.round(Double.parseDouble(stXField.getText()) * 100.0) / 100.0;
                 s.z = Math.round(Double.parseDouble(stZField.getText()) * 100.0) / 100.0;
                 String t = (String)stTypeBox.getSelectedItem(); s.type = (t != null && t.equals("station")) ? null : t;
@@ -369,28 +457,40 @@ public class HighwayEditor extends JFrame {
                     s.y1 = stY1Field.getText().isEmpty() ? null : Integer.parseInt(stY1Field.getText());
                     s.y2 = stY2Field.getText().isEmpty() ? null : Integer.parseInt(stY2Field.getText());
                 } else { s.y1 = null; s.y2 = null; }
-                s.lines = new HashMap<>();
+                index.unlink(s);
+                s.lines = new StationLines();
                 for (int i = 0; i < connectionModel.getRowCount(); i++) {
                     String cat = (String)connectionModel.getValueAt(i,0); String ln = (String)connectionModel.getValueAt(i,1);
                     String brName = (String)connectionModel.getValueAt(i,3); if (brName == null || brName.isEmpty()) brName = "Main line";
                     if (cat != null && !cat.isEmpty() && ln != null && !ln.isEmpty()) {
-                        s.lines.computeIfAbsent(cat, k->new HashMap<>()).put(ln, new String[]{(String)connectionModel.getValueAt(i,2), brName});
+                        s.lines.put(cat, ln, (String)connectionModel.getValueAt(i,2), brName);
                         if (data.lines.containsKey(cat) && data.lines.get(cat).containsKey(ln)) {
                             LineData ld = data.lines.get(cat).get(ln);
-                            LineData.Branch br = ld.branches.computeIfAbsent(brName, k -> { LineData.Branch b = new LineData.Branch(); b.stations = new ArrayList<>(); b.vertices = new ArrayList<>(); return b; });
-                            if (!br.stations.contains(s.id)) br.stations.add(s.id);
-                            boolean found = false; for (Double[] v : br.vertices) if (v[0] == s.x && v[1] == s.z) { found = true; break; }
-                            if (!found) br.vertices.add(new Double[]{s.x, s.z});
+                            boolean created = !ld.branches.containsKey(brName);
+                            LineData.Branch br = ld.branches.computeIfAbsent(brName, k -> newBranch());
+                            catalog.addBranch(cat, ln, brName);
+                            boolean added = index.addToBranch(cat, ln, brName, br, s.id);
+                            double[] vertex = null;
+                            if (!index.hasVertex(br, s.x, s.z)) { index.addVertex(br, s.x, s.z); mapPanel.lineChanged(cat, ln); vertex = new double[]{s.x, s.z}; }
+                            if (created || added || vertex != null) { journalLine(cat, ln); appends.add(new BranchAppend(cat, ln, brName, created, added ? s.id : null, vertex)); }
                         }
                     }
                 }
+                index.link(s); stationListModel.changed(s, before); if (stationList.getSelectedValue() != s) stationList.setSelectedValue(s, true);
+                mapPanel.stationChanged(s); validator.stationChanged(s); routes.stationChanged(s); journalStation(s);
+                history.add(new StationEdit("Station Edit", s, before, s.copy(), appends));
             } else {
                 String sel = lineList.getSelectedValue(); if (sel == null) return;
                 String[] p = sel.split(": "); LineData ld = data.lines.get(p[0]).get(p[1]);
+                ev.target = "line " + sel;
+                LineFields before = LineFields.of(ld);
                 ld.code = lnCodeField.getText(); ld.prefix = lnPrefixField.getText();
                 ld.y = Integer.parseInt(lnYField.getText()); ld.color = lnColorField.getText().replace("#","");
-                mapPanel.commitPathChanges();
+                Map<String, PathDelta> paths = mapPanel.commitPathChanges(); validator.lineChanged(p[0], p[1]); routes.lineChanged(p[0], p[1]); journalLine(p[0], p[1]);
+                history.add(new LineEdit(p[0], p[1], before, LineFields.of(ld), paths));
             }
+            updateProblems(); refreshRoute(); updateUndoMenu();
+            ev.commit(); PerfStats.record("applyChanges", System.nanoTime() - t0);
             mapPanel.repaint(); JOptionPane.showMessageDialog(this, "Changes Applied Locally.");
         } catch (Exception e) { e.printStackTrace(); JOptionPane.showMessageDialog(this, "Check inputs."); }
         setSaved(false);
@@ -398,8 +498,11 @@ public class HighwayEditor extends JFrame {
     
     private void addNewStation() {
         if (data == null) return;
-        Station s = new Station(); s.name = "New Station"; s.id = data.stations.stream().mapToInt(st -> st.id).max().orElse(0) + 1;
-        s.x = mapPanel.offX; s.z = mapPanel.offZ; s.lines = new HashMap<>(); data.stations.add(s); refreshLists(); stationList.setSelectedValue(s, true);
+        Station s = new Station(); s.name = "New Station"; s.id = index.nextId();
+        s.x = mapPanel.offX; s.z = mapPanel.offZ; s.lines = new StationLines();
+        int pos = data.stations.size();
+        insertStation(pos, s); updateProblems(); stationList.setSelectedValue(s, true);
+        history.add(UndoHistory.of("Add Station", UndoHistory.estimate(s), () -> removeStation(s), () -> insertStation(pos, s))); updateUndoMenu();
         setSaved(false);
     }
     
@@ -411,10 +514,12 @@ public class HighwayEditor extends JFrame {
         p.add(new JLabel("Category:")); p.add(catBox); p.add(new JLabel("Line Name:")); p.add(nameF);
         if (JOptionPane.showConfirmDialog(this, p, "New Line", JOptionPane.OK_CANCEL_OPTION) == JOptionPane.OK_OPTION) {
             String cat = (String)catBox.getSelectedItem(); String name = nameF.getText();
-            if (cat != null && !cat.isEmpty() && !name.isEmpty()) {
+            if (cat != null && !cat.isEmpty() && !name.isEmpty() && data.lines.containsKey(cat) && data.lines.get(cat).containsKey(name)) {
+                lineList.setSelectedValue(cat + ": " + name, true); statusLabel.setText("Line " + cat + ": " + name + " already exists");
+            } else if (cat != null && !cat.isEmpty() && !name.isEmpty()) {
                 LineData ld = new LineData(); ld.branches = new HashMap<>(); ld.color = "ffffff";
-                data.lines.computeIfAbsent(cat, k -> new HashMap<>()).put(name, ld);
-                refreshLists(); lineList.setSelectedValue(cat + ": " + name, true);
+                putLine(cat, name, ld); updateProblems(); lineList.setSelectedValue(cat + ": " + name, true);
+                history.add(UndoHistory.of("Add Line", UndoHistory.estimate(ld), () -> removeLine(cat, name), () -> putLine(cat, name, ld))); updateUndoMenu();
             }
         }
         setSaved(false);
@@ -424,13 +529,16 @@ public class HighwayEditor extends JFrame {
         if (data == null) return;
         if (leftTabs.getSelectedIndex() == 0) {
             Station s = stationList.getSelectedValue();
-            if (s != null && JOptionPane.showConfirmDialog(this, "Delete Station?") == 0) { data.stations.remove(s); refreshLists(); }
+            if (s != null && JOptionPane.showConfirmDialog(this, "Delete Station?") == 0) {
+                int pos = data.stations.indexOf(s);
+                removeStation(s); updateProblems(); refreshRoute();
+                history.add(UndoHistory.of("Delete Station", UndoHistory.estimate(s), () -> insertStation(pos, s), () -> removeStation(s))); updateUndoMenu();
+            }
         } else {
             String sel = lineList.getSelectedValue();
             if (sel != null && JOptionPane.showConfirmDialog(this, "Delete Line?") == 0) {
-                String[] p = sel.split(": "); data.lines.get(p[0]).remove(p[1]);
-                if (data.lines.get(p[0]).isEmpty()) data.lines.remove(p[0]);
-                refreshLists();
+                String[] p = sel.split(": "); LineData ld = removeLine(p[0], p[1]); updateProblems(); refreshRoute();
+                history.add(UndoHistory.of("Delete Line", UndoHistory.estimate(ld), () -> putLine(p[0], p[1], ld), () -> removeLine(p[0], p[1]))); updateUndoMenu();
             }
         }
         mapPanel.repaint();
@@ -438,18 +546,69 @@ public class HighwayEditor extends JFrame {
     }
     
     private void saveFileAs() {
+        if (data == null) return;
         JFileChooser c = new JFileChooser();
         if (c.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             currentFile = c.getSelectedFile(); if (!currentFile.getName().endsWith(".json")) currentFile = new File(currentFile.getAbsolutePath()+".json");
-            try (Writer w = new FileWriter(currentFile)) { new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(data, w); Desktop.getDesktop().open(currentFile.getParentFile()); } catch (IOException e) { throw new RuntimeException(e); }
-            setSaved(true);
+            writeCurrentFile(true);
         }
     }
 
     private void saveFile() {
+        if (data == null) return;
         if (currentFile == null) { saveFileAs(); return; }
-        try (Writer w = new FileWriter(currentFile)) { new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(data, w); Desktop.getDesktop().open(currentFile.getParentFile()); } catch (IOException e) { throw new RuntimeException(e); }
-        setSaved(true);
+        writeCurrentFile(false);
+    }
+    
+    /**
+     * Snapshots the model on the EDT and writes it atomically on a background worker, so the editor stays
+     * usable while the file is written. Saves requested while one is running are coalesced into one more.
+     */
+    private void writeCurrentFile(boolean revealFolder) {
+        if (saving) { saveQueued = true; return; }
+        saving = true;
+        File target = currentFile; long rev = revision; boolean pretty = !compactJson.isSelected(), cache = binaryCache.isSelected();
+        HighwaysData snapshot = data.copy();
+        EditJournal j = journal; long mark = j == null ? 0 : j.mark();
+        statusLabel.setText("Saving " + target.getName() + "...");
+        new SwingWorker<Long, Void>() {
+            long size, crc;
+            protected Long doInBackground() throws IOException {
+                EditorEvents.Save ev = new EditorEvents.Save(); ev.begin();
+                long t0 = System.nanoTime();
+                crc = HighwaysWriter.write(snapshot, target.toPath(), pretty);
+                size = Files.size(target.toPath());
+                if (cache) {
+                    try { HighwaysSnapshot.write(snapshot, target.toPath(), size, crc); }
+                    catch (IOException e) {
+                        // The cache is optional: a stale one is ignored on open, so it must never fail a save that worked
+                        try { Files.deleteIfExists(HighwaysSnapshot.sidecar(target.toPath())); } catch (IOException ignored) {}
+                    }
+                }
+                long nanos = System.nanoTime() - t0;
+                ev.end(); PerfStats.record("save", nanos);
+                if (ev.shouldCommit()) { ev.file = target.getName(); ev.bytes = target.length(); ev.pretty = pretty; ev.cache = cache; ev.commit(); }
+                return nanos / 1_000_000;
+            }
+            protected void done() {
+                saving = false;
+                try {
+                    long ms = get();
+                    statusLabel.setText(String.format(Locale.US, "Saved %s in %d ms (%,d KB)", target.getName(), ms, target.length() / 1024));
+                    if (j != null && j == journal) j.saved(mark, target.toPath(), size, crc);
+                    if (target.equals(currentFile)) watch(target, size, crc);
+                    if (rev == revision && target.equals(currentFile)) setSaved(true);
+                    if (revealFolder && Desktop.isDesktopSupported()) {
+                        try { Desktop.getDesktop().open(target.getAbsoluteFile().getParentFile()); } catch (IOException ignored) {}
+                    }
+                } catch (Exception e) {
+                    statusLabel.setText("Save failed: " + e.getMessage());
+                    JOptionPane.showMessageDialog(HighwayEditor.this, "Could not save " + target.getName() + ":\n" + e.getCause(), "Save", JOptionPane.ERROR_MESSAGE);
+                }
+                if (saveQueued) { saveQueued = false; saveFile(); }
+                else if (reloadQueued) { reloadQueued = false; reloadIfChanged(); }
+            }
+        }.execute();
     }
     
     private void setupDragAndDrop() {
@@ -458,10 +617,8 @@ public class HighwayEditor extends JFrame {
                 try {
                     evt.acceptDrop(DnDConstants.ACTION_COPY);
                     java.util.List<File> files = (java.util.List<File>) evt.getTransferable().getTransferData(DataFlavor.javaFileListFlavor);
-                    if (!files.isEmpty()) {
-                        currentFile = files.get(0);
-                        data = new Gson().fromJson(new FileReader(currentFile), HighwaysData.class); refreshLists(); mapPanel.setData(data);
-                    }
+                    if (!files.isEmpty()) loadFile(files.get(0));
+                    evt.dropComplete(true);
                 } catch (Exception e) { throw new RuntimeException(e); }
             }
         });
@@ -471,46 +628,575 @@ public class HighwayEditor extends JFrame {
     private void openFile() {
         JFileChooser c = new JFileChooser();
         if (c.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            currentFile = c.getSelectedFile(); if (!currentFile.getName().endsWith(".json")) currentFile = new File(currentFile.getAbsolutePath()+".json");
-            try {
-                data = new Gson().fromJson(new FileReader(currentFile), HighwaysData.class); refreshLists(); mapPanel.setData(data);
-            } catch (IOException e) { throw new RuntimeException(e); }
+            File f = c.getSelectedFile(); if (!f.getName().endsWith(".json")) f = new File(f.getAbsolutePath()+".json");
+            loadFile(f);
         }
-        setSaved(true);
     }
     
+    /**
+     * Parses the file on a background worker with a cancellable progress dialog; the editor keeps its
+     * current data until the new model is complete, and only then swaps it in on the EDT. Unsaved edits left
+     * in the file's journal by an earlier session are offered for replay first.
+     */
+    private void loadFile(File f) {
+        long total = Math.max(1, f.length());
+        boolean recover = EditJournal.exists(f.toPath()) && JOptionPane.showConfirmDialog(this,
+            f.getName() + " has unsaved edits from an earlier session. Recover them? (No discards them.)", "Recover Edits", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION;
+        ProgressMonitor monitor = new ProgressMonitor(this, "Loading " + f.getName(), null, 0, 100);
+        boolean useCache = binaryCache.isSelected();
+        SwingWorker<HighwaysData, Void> worker = new SwingWorker<>() {
+            HighwaysIndex loadedIndex;
+            IncrementalValidator loadedValidator;
+            RouteGraph loadedRoutes;
+            boolean fromCache; long ms, size, crc; int recovered = -1;
+            protected HighwaysData doInBackground() throws IOException {
+                EditorEvents.Load ev = new EditorEvents.Load(); ev.begin();
+                long t0 = System.nanoTime();
+                HighwaysData d = useCache ? HighwaysSnapshot.readIfFresh(f.toPath()) : null;
+                fromCache = d != null;
+                if (d == null) d = HighwaysReader.read(f.toPath(), n -> setProgress((int)Math.min(100, n * 100 / total)));
+                long nanos = System.nanoTime() - t0; ms = nanos / 1_000_000;
+                ev.end(); PerfStats.record("load", nanos);
+                if (ev.shouldCommit()) {
+                    ev.file = f.getName(); ev.bytes = f.length(); ev.fromCache = fromCache;
+                    ev.stations = d.stations == null ? 0 : d.stations.size();
+                    ev.lines = d.lines == null ? 0 : d.lines.values().stream().mapToInt(Map::size).sum();
+                    ev.commit();
+                }
+                size = Files.size(f.toPath()); crc = HighwaysSnapshot.checksum(f.toPath());
+                if (recover) recovered = EditJournal.replay(f.toPath(), size, crc, d);
+                loadedIndex = new HighwaysIndex(d);
+                loadedValidator = new IncrementalValidator(d, loadedIndex);
+                loadedRoutes = new RouteGraph(d, loadedIndex);
+                return d;
+            }
+            protected void done() {
+                monitor.close();
+                if (isCancelled()) return;
+                try {
+                    install(get(), loadedIndex, loadedValidator, loadedRoutes); currentFile = f; setSaved(recovered <= 0);
+                    statusLabel.setText(String.format(Locale.US, "Opened %s in %d ms%s", f.getName(), ms, fromCache ? " (binary cache)" : "")
+                        + (recovered > 0 ? ", recovered " + recovered + " edits" : recover && recovered < 0 ? ", journal was for another version and is discarded" : ""));
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(HighwayEditor.this, "Could not load " + f.getName() + ":\n" + e.getCause(), "Open", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (journal != null) journal.close();
+                try { journal = EditJournal.open(f.toPath(), size, crc, recovered > 0); }
+                catch (IOException e) {
+                    journal = null;
+                    statusLabel.setText("Opened " + f.getName() + " without an edit journal: " + e.getMessage());
+                }
+                watch(f, size, crc);
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) monitor.setProgress((Integer) e.getNewValue());
+            if (monitor.isCanceled() && !worker.isDone()) worker.cancel(true);
+        });
+        worker.execute();
+    }
+    
+    // --- Model changes shared by editing, undo/redo and reloading; each keeps every index, view and the journal in step, callers refresh problems and the route ---
+    private void insertStation(int pos, Station s) {
+        data.stations.add(pos, s); index.addStation(s); mapPanel.stationChanged(s);
+        searchDirty = true; stationListModel.add(s);
+        validator.stationAdded(s); routes.stationChanged(s); journalStation(s);
+    }
+
+    private void removeStation(Station s) {
+        data.stations.remove(s); index.removeStation(s); mapPanel.stationRemoved(s); searchDirty = true; stationListModel.remove(s);
+        validator.stationRemoved(s); routes.stationRemoved(s); if (journal != null) journal.stationRemoved(s.id);
+    }
+
+    /** Gives {@code s} the fields and connections of {@code from}, keeping its identity. */
+    private void restoreStation(Station s, Station from) {
+        Station c = from.copy(), before = s.copy();
+        index.unlink(s);
+        s.name = c.name; s.x = c.x; s.z = c.z; s.type = c.type; s.notes = c.notes; s.y1 = c.y1; s.y2 = c.y2; s.lines = c.lines; s.areas = c.areas;
+        index.link(s);
+        searchDirty = true; stationListModel.changed(s, before);
+        mapPanel.stationChanged(s); validator.stationChanged(s); routes.stationChanged(s); journalStation(s);
+    }
+
+    private void putLine(String cat, String name, LineData ld) {
+        data.lines.computeIfAbsent(cat, k -> new HashMap<>()).put(name, ld); index.addLine(cat, name, ld);
+        searchDirty = true; lineListModel.add(cat + ": " + name); catalog.addLine(cat, name, ld); mapPanel.lineChanged(cat, name);
+        validator.lineChanged(cat, name); routes.lineChanged(cat, name); journalLine(cat, name);
+    }
+
+    private LineData removeLine(String cat, String name) {
+        String key = cat + ": " + name;
+        LineData ld = data.lines.get(cat).remove(name); index.removeLine(cat, name, ld);
+        if (data.lines.get(cat).isEmpty()) data.lines.remove(cat);
+        mapPanel.lineRemoved(key);
+        searchDirty = true; lineListModel.remove(key); catalog.removeLine(cat, name); validator.lineRemoved(cat, name); routes.lineRemoved(cat, name);
+        if (journal != null) journal.lineRemoved(cat, name);
+        return ld;
+    }
+
+    /** Changes a line in place, re-indexing its branches around the change. */
+    private void editLine(String cat, String name, Consumer<LineData> change) {
+        LineData ld = data.lines.get(cat).get(name);
+        index.removeLine(cat, name, ld);
+        change.accept(ld);
+        index.addLine(cat, name, ld);
+        mapPanel.lineChanged(cat, name); validator.lineChanged(cat, name); routes.lineChanged(cat, name); journalLine(cat, name);
+    }
+
+    private static LineData.Branch newBranch() { LineData.Branch b = new LineData.Branch(); b.stations = new ArrayList<>(); b.vertices = new Polyline(); return b; }
+
+    /** What applying a station's connections appended to one branch: the station's id, its position as a corner, or the branch itself. */
+    private record BranchAppend(String category, String line, String branch, boolean created, Integer id, double[] vertex) {}
+
+    /** A station's fields and connections before and after, plus what the change appended to branches. */
+    private class StationEdit implements UndoHistory.Edit {
+        final String name; final Station s, before, after; final List<BranchAppend> appends;
+        StationEdit(String name, Station s, Station before, Station after, List<BranchAppend> appends) { this.name = name; this.s = s; this.before = before; this.after = after; this.appends = appends; }
+        public String name() { return name; }
+        public long bytes() { return UndoHistory.estimate(before) + UndoHistory.estimate(after) + 96L * appends.size(); }
+        public void undo() {
+            for (int i = appends.size() - 1; i >= 0; i--) {
+                BranchAppend a = appends.get(i);
+                editLine(a.category(), a.line(), ld -> {
+                    LineData.Branch br = ld.branches.get(a.branch());
+                    if (a.vertex() != null) br.vertices.remove(br.vertices.size() - 1);
+                    if (a.id() != null) br.stations.remove(br.stations.size() - 1);
+                    if (a.created()) ld.branches.remove(a.branch());
+                });
+            }
+            restoreStation(s, before);
+        }
+        public void redo() {
+            restoreStation(s, after);
+            for (BranchAppend a : appends) editLine(a.category(), a.line(), ld -> {
+                LineData.Branch br = a.created() ? ld.branches.computeIfAbsent(a.branch(), k -> newBranch()) : ld.branches.get(a.branch());
+                if (a.id() != null) br.stations.add(a.id());
+                if (a.vertex() != null) br.vertices.add(a.vertex()[0], a.vertex()[1]);
+            });
+        }
+    }
+
+    private record LineFields(String prefix, String code, String color, int y) {
+        static LineFields of(LineData ld) { return new LineFields(ld.prefix, ld.code, ld.color, ld.y); }
+        void applyTo(LineData ld) { ld.prefix = prefix; ld.code = code; ld.color = color; ld.y = y; }
+    }
+
+    /** A line's fields before and after, and only the changed stretches of its paths. */
+    private class LineEdit implements UndoHistory.Edit {
+        final String cat, line; final LineFields before, after; final Map<String, PathDelta> paths;
+        LineEdit(String cat, String line, LineFields before, LineFields after, Map<String, PathDelta> paths) { this.cat = cat; this.line = line; this.before = before; this.after = after; this.paths = paths; }
+        public String name() { return paths.isEmpty() ? "Line Edit" : "Path Edit"; }
+        public long bytes() { long n = 160; for (PathDelta d : paths.values()) n += d.bytes(); return n; }
+        public void undo() { mapPanel.discardStaging(cat, line); editLine(cat, line, ld -> { before.applyTo(ld); paths.forEach((b, d) -> d.undo(ld.branches.get(b).vertices)); }); }
+        public void redo() { mapPanel.discardStaging(cat, line); editLine(cat, line, ld -> { after.applyTo(ld); paths.forEach((b, d) -> d.redo(ld.branches.get(b).vertices)); }); }
+    }
+
+    /** Called once when a station drag ends; checks, re-routes and journals the station at its new position and makes the move undoable. */
+    private void recordStationMove(Station s, double fromX, double fromZ) {
+        Station before = s.copy(); before.x = fromX; before.z = fromZ;
+        history.add(new StationEdit("Move Station", s, before, s.copy(), List.of())); updateUndoMenu(); journalStation(s); setSaved(false);
+        if (validator != null) { validator.stationChanged(s); routes.stationChanged(s); updateProblems(); refreshRoute(); }
+    }
+
+    private void undoRedo(boolean back) {
+        if (data == null || mapPanel.draggedVertex != null || mapPanel.draggedStation != null) return;
+        UndoHistory.Edit e = back ? history.undo() : history.redo();
+        if (e == null) return;
+        refreshEditor();
+        updateProblems(); refreshRoute(); mapPanel.repaint(); setSaved(false); updateUndoMenu();
+        statusLabel.setText((back ? "Undid " : "Redid ") + e.name().toLowerCase(Locale.ROOT));
+    }
+
+    /** Re-reads the selected station or line into the editor after the model changed under it. */
+    private void refreshEditor() {
+        Station s = stationList.getSelectedValue();
+        if (s != null && leftTabs.getSelectedIndex() == 0 && index.station(s.id) == s) populateStationEditor(s);
+        String sel = lineList.getSelectedValue();
+        if (sel != null && leftTabs.getSelectedIndex() == 1) { String[] p = sel.split(": "); if (data.lines.containsKey(p[0]) && data.lines.get(p[0]).containsKey(p[1])) populateLineEditor(sel); }
+    }
+
+    private void updateUndoMenu() {
+        undoItem.setEnabled(history.canUndo()); undoItem.setText(history.canUndo() ? "Undo " + history.undoName() : "Undo");
+        redoItem.setEnabled(history.canRedo()); redoItem.setText(history.canRedo() ? "Redo " + history.redoName() : "Redo");
+    }
+
+    private void journalStation(Station s) { if (journal != null) journal.station(s); }
+
+    private void journalLine(String cat, String name) { if (journal != null) journal.line(cat, name, data.lines.get(cat).get(name)); }
+
+    /** Journals what a merge changed in the open map, one record per station or line it touched. */
+    private void journalMerge(List<HighwaysDiff.Change> changes) {
+        if (journal == null) return;
+        Set<Integer> ids = new LinkedHashSet<>(); Set<String> keys = new LinkedHashSet<>();
+        for (HighwaysDiff.Change c : changes) { if (c.stationId() != null) ids.add(c.stationId()); else keys.add(c.lineKey()); }
+        for (int id : ids) { Station s = index.station(id); if (s != null) journal.station(s); else journal.stationRemoved(id); }
+        for (String key : keys) {
+            String[] p = key.split(": ", 2);
+            Map<String, LineData> m = data.lines.get(p[0]);
+            if (m != null && m.containsKey(p[1])) journal.line(p[0], p[1], m.get(p[1])); else journal.lineRemoved(p[0], p[1]);
+        }
+    }
+
+    /** Remembers the version of {@code f} the editor has, and watches it for changes by other programs. */
+    private void watch(File f, long size, long crc) {
+        diskSize = size; diskCrc = crc;
+        if (f.equals(watchedFile)) return;
+        if (watcher != null) watcher.close();
+        watcher = null; watchedFile = f;
+        try { watcher = new FileWatcher(f.toPath(), () -> SwingUtilities.invokeLater(this::reloadIfChanged)); }
+        catch (IOException | RuntimeException e) { statusLabel.setText("Not watching " + f.getName() + " for changes: " + e.getMessage()); }
+    }
+
+    /**
+     * Brings in what another program changed in the open file. It is re-read in the background and compared
+     * with the open map by station id and line, and only what differs is patched in, so the selection, the
+     * view and a path being edited stay as they are. With unsaved edits the user is asked first, since they
+     * differ from the file too.
+     */
+    private void reloadIfChanged() {
+        if (data == null || currentFile == null || !currentFile.equals(watchedFile)) return;
+        if (saving || reloading || mapPanel.draggedVertex != null || mapPanel.draggedStation != null) { reloadQueued = true; return; }
+        reloading = true;
+        File f = currentFile; long rev = revision, oldSize = diskSize, oldCrc = diskCrc;
+        HighwaysData snapshot = data.copy();
+        new SwingWorker<HighwaysData, Void>() {
+            long size, crc;
+            List<HighwaysDiff.Change> changes;
+            protected HighwaysData doInBackground() throws IOException {
+                size = Files.size(f.toPath()); crc = HighwaysSnapshot.checksum(f.toPath());
+                if (size == oldSize && crc == oldCrc) return null;
+                HighwaysData d = HighwaysReader.read(f.toPath(), null);
+                changes = HighwaysDiff.diff(snapshot, d);
+                return d;
+            }
+            protected void done() {
+                try {
+                    HighwaysData d = get();
+                    if (d != null && f.equals(currentFile)) {
+                        if (rev != revision) changes = HighwaysDiff.diff(data, d);
+                        if (saved || changes.isEmpty() || JOptionPane.showConfirmDialog(HighwayEditor.this, f.getName() + " was changed by another program. Reload it?\n"
+                                + "Your unsaved edits will be replaced by the file's version.", "File Changed", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) patchFromDisk(d, changes, f, size, crc);
+                        else { diskSize = size; diskCrc = crc; if (journal != null) journal.rebase(size, crc); journalMerge(changes); statusLabel.setText(f.getName() + " was changed by another program; kept your version"); }
+                    }
+                } catch (Exception e) {
+                    statusLabel.setText("Could not reload " + f.getName() + ": " + (e.getCause() == null ? e : e.getCause()).getMessage());
+                }
+                reloading = false;
+                if (reloadQueued) { reloadQueued = false; reloadIfChanged(); }
+            }
+        }.execute();
+    }
+
+    /** Patches the stations and lines that differ from the file's new version into the open map, which then matches the file. */
+    private void patchFromDisk(HighwaysData d, List<HighwaysDiff.Change> changes, File f, long size, long crc) {
+        EditJournal j = journal; journal = null;
+        Set<Integer> ids = new LinkedHashSet<>(); Set<String> keys = new LinkedHashSet<>();
+        for (HighwaysDiff.Change c : changes) { if (c.stationId() != null) ids.add(c.stationId()); else keys.add(c.lineKey()); }
+        Map<Integer, Station> fresh = new HashMap<>();
+        for (Station s : d.stations) if (ids.contains(s.id)) fresh.put(s.id, s);
+        for (String key : keys) { String[] p = key.split(": ", 2); if (line(d, p) == null && line(data, p) != null) removeLine(p[0], p[1]); }
+        for (int id : ids) {
+            Station s = index.station(id), n = fresh.get(id);
+            if (n == null) { if (s != null) removeStation(s); }
+            else if (s != null) restoreStation(s, n);
+        }
+        // New stations go where the file has them, which is where everything before them already is
+        for (int i = 0; i < d.stations.size(); i++) { Station n = d.stations.get(i); if (fresh.get(n.id) == n && index.station(n.id) == null) insertStation(Math.min(i, data.stations.size()), n); }
+        for (String key : keys) {
+            String[] p = key.split(": ", 2); LineData n = line(d, p);
+            if (n == null) continue;
+            if (line(data, p) == null) putLine(p[0], p[1], n); else editLine(p[0], p[1], ld -> patchLine(p[0], p[1], ld, n));
+        }
+        history.removeIf(e -> !(e instanceof MapPanel.StagingEdit)); updateUndoMenu();
+        refreshEditor(); updateProblems(); refreshRoute(); mapPanel.repaint();
+        if (j != null) j.close();
+        try { journal = EditJournal.open(f.toPath(), size, crc, false); } catch (IOException e) { journal = null; }
+        watch(f, size, crc); setSaved(true);
+        statusLabel.setText("Reloaded " + f.getName() + ": " + ids.size() + " stations and " + keys.size() + " lines changed");
+    }
+
+    private static LineData line(HighwaysData d, String[] key) {
+        Map<String, LineData> m = d.lines == null ? null : d.lines.get(key[0]);
+        return m == null ? null : m.get(key[1]);
+    }
+
+    /** Makes {@code ld} match {@code from}, keeping the branches both have so staging and caches keep their references. */
+    private void patchLine(String cat, String name, LineData ld, LineData from) {
+        ld.prefix = from.prefix; ld.code = from.code; ld.color = from.color; ld.y = from.y;
+        Map<String, LineData.Branch> branches = from.branches == null ? Map.of() : from.branches;
+        if (ld.branches == null) ld.branches = new HashMap<>();
+        ld.branches.keySet().retainAll(branches.keySet());
+        branches.forEach((b, n) -> {
+            LineData.Branch br = ld.branches.get(b);
+            if (br == null) { ld.branches.put(b, n); catalog.addBranch(cat, name, b); return; }
+            br.stations = n.stations;
+            if (br.vertices != null && n.vertices != null) br.vertices.setAll(n.vertices); else br.vertices = n.vertices;
+        });
+    }
+
+    private void install(HighwaysData d, HighwaysIndex ix, IncrementalValidator v, RouteGraph r) {
+        data = d; index = ix; validator = v; routes = r;
+        refreshLists(); mapPanel.setData(data); updateProblems();
+        history.clear(); updateUndoMenu();
+    }
+
+    private File chooseJson(String title) {
+        JFileChooser c = new JFileChooser(currentFile == null ? null : currentFile.getParentFile());
+        c.setDialogTitle(title);
+        return c.showOpenDialog(this) == JFileChooser.APPROVE_OPTION ? c.getSelectedFile() : null;
+    }
+
+    /** Lists what differs between the open map and another file, by station id and line. */
+    private void compareWithFile() {
+        if (data == null) return;
+        File f = chooseJson("Compare With");
+        if (f == null) return;
+        HighwaysData snapshot = data.copy();
+        statusLabel.setText("Comparing with " + f.getName() + "...");
+        new SwingWorker<List<HighwaysDiff.Change>, Void>() {
+            protected List<HighwaysDiff.Change> doInBackground() throws IOException { return HighwaysDiff.diff(snapshot, HighwaysReader.read(f.toPath(), null)); }
+            protected void done() {
+                try {
+                    List<HighwaysDiff.Change> changes = get();
+                    statusLabel.setText(changes.size() + " differences from " + f.getName());
+                    if (!changes.isEmpty()) showFindings("Differences from " + f.getName(), changes, c -> showItem(c.stationId(), c.lineKey()));
+                } catch (Exception e) {
+                    statusLabel.setText("Compare failed");
+                    JOptionPane.showMessageDialog(HighwayEditor.this, "Could not compare with " + f.getName() + ":\n" + e.getCause(), "Compare", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /** Renders the map into a tile pyramid for the web map; exporting into the same folder again only redraws what changed. */
+    private void exportTiles() {
+        if (data == null) return;
+        JFileChooser c = new JFileChooser(currentFile == null ? null : currentFile.getParentFile());
+        c.setDialogTitle("Export Tiles To");
+        c.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (c.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File dir = c.getSelectedFile();
+        HighwaysData snapshot = data.copy();
+        statusLabel.setText("Exporting tiles to " + dir.getName() + "...");
+        new SwingWorker<TileExporter.Stats, Void>() {
+            protected TileExporter.Stats doInBackground() throws IOException { return TileExporter.export(snapshot, dir.toPath(), TileExporter.defaultMaxZoom(snapshot)); }
+            protected void done() {
+                try { statusLabel.setText("Tiles: " + get()); }
+                catch (Exception e) {
+                    statusLabel.setText("Tile export failed");
+                    JOptionPane.showMessageDialog(HighwayEditor.this, "Could not export tiles:\n" + e.getCause(), "Export Tiles", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Three-way merge of the open map ("ours") with another copy edited from the same base. The result replaces
+     * the open map, unsaved; conflicts keep our side and are listed.
+     */
+    private void mergeFiles() {
+        if (data == null) return;
+        File baseFile = chooseJson("Merge: common base version");
+        if (baseFile == null) return;
+        File theirsFile = chooseJson("Merge: their version");
+        if (theirsFile == null) return;
+        HighwaysData ours = data.copy();
+        statusLabel.setText("Merging " + theirsFile.getName() + "...");
+        new SwingWorker<HighwaysMerge.Result, Void>() {
+            HighwaysIndex mergedIndex;
+            IncrementalValidator mergedValidator;
+            RouteGraph mergedRoutes;
+            List<HighwaysDiff.Change> changes;
+            protected HighwaysMerge.Result doInBackground() throws IOException {
+                HighwaysMerge.Result r = HighwaysMerge.merge(HighwaysReader.read(baseFile.toPath(), null), ours, HighwaysReader.read(theirsFile.toPath(), null));
+                changes = HighwaysDiff.diff(ours, r.merged());
+                mergedIndex = new HighwaysIndex(r.merged());
+                mergedValidator = new IncrementalValidator(r.merged(), mergedIndex);
+                mergedRoutes = new RouteGraph(r.merged(), mergedIndex);
+                return r;
+            }
+            protected void done() {
+                try {
+                    HighwaysMerge.Result r = get();
+                    install(r.merged(), mergedIndex, mergedValidator, mergedRoutes); setSaved(false);
+                    journalMerge(changes);
+                    statusLabel.setText("Merged " + theirsFile.getName() + ": " + r.conflicts().size() + " conflicts");
+                    if (!r.conflicts().isEmpty()) showFindings("Merge conflicts (our side was kept)", r.conflicts(), c -> showItem(c.stationId(), c.lineKey()));
+                } catch (Exception e) {
+                    statusLabel.setText("Merge failed");
+                    JOptionPane.showMessageDialog(HighwayEditor.this, "Could not merge:\n" + e.getCause(), "Merge", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /** Non-modal list of findings; double-click one to select what it is about. */
+    private <T> void showFindings(String title, List<T> rows, Consumer<T> open) {
+        JList<T> list = new JList<>(new Vector<>(rows));
+        list.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) { if (e.getClickCount() == 2 && list.getSelectedValue() != null) open.accept(list.getSelectedValue()); }
+        });
+        JDialog d = new JDialog(this, title + " (" + rows.size() + ")", false);
+        d.add(new JScrollPane(list));
+        d.setSize(700, 400); d.setLocationRelativeTo(this); d.setVisible(true);
+    }
+
+    /** Asks for two stations, by id or name, and shows the cheapest route between them on the map. */
+    private void findRoute() {
+        if (data == null) return;
+        Station sel = stationList.getSelectedValue();
+        JTextField fromF = new JTextField(sel == null ? "" : String.valueOf(sel.id), 20), toF = new JTextField(20);
+        JPanel p = new JPanel(new GridLayout(2, 2, 5, 5));
+        p.add(new JLabel("From (ID or name):")); p.add(fromF); p.add(new JLabel("To (ID or name):")); p.add(toF);
+        if (JOptionPane.showConfirmDialog(this, p, "Find Route", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) return;
+        Station from = findStation(fromF.getText()), to = findStation(toF.getText());
+        if (from == null || to == null) { JOptionPane.showMessageDialog(this, "No station matches \"" + (from == null ? fromF : toF).getText().trim() + "\"."); return; }
+        RouteGraph.Route r = routes.route(from, to);
+        if (r == null) { JOptionPane.showMessageDialog(this, from == to ? "Pick two different stations." : "No route between " + from.name + " and " + to.name + "."); return; }
+        mapPanel.setRoute(r);
+        showRouteStatus(r);
+    }
+
+    /** Station by id, else by exact name, else the first whose name contains the text, ignoring case. */
+    private Station findStation(String text) {
+        String t = text.trim();
+        if (t.isEmpty()) return null;
+        if (t.chars().allMatch(Character::isDigit)) {
+            try { Station s = index.station(Integer.parseInt(t)); if (s != null) return s; }
+            catch (NumberFormatException e) { /* too long for an id; may still be part of a name */ }
+        }
+        Station partial = null;
+        for (Station s : data.stations) {
+            if (s.name == null) continue;
+            if (s.name.equalsIgnoreCase(t)) return s;
+            if (partial == null && s.name.toLowerCase(Locale.ROOT).contains(t.toLowerCase(Locale.ROOT))) partial = s;
+        }
+        return partial;
+    }
+
+    /** Re-plans the route on the map after an edit, keeping its end stations. */
+    private void refreshRoute() {
+        RouteGraph.Route old = mapPanel.route;
+        if (old == null) return;
+        RouteGraph.Route r = routes.route(old.from(), old.to());
+        mapPanel.setRoute(r);
+        if (r != null) showRouteStatus(r); else statusLabel.setText("Route from " + old.from().name + " to " + old.to().name + " is no longer connected");
+    }
+
+    private void showRouteStatus(RouteGraph.Route r) {
+        statusLabel.setText(String.format(Locale.US, "Route %s \u2192 %s: %d stops, %d transfers, %,.0f blocks", r.from().name, r.to().name, r.legs().size(), r.transfers(), r.length()));
+    }
+
+    private void updateProblems() { problemsPanel.setProblems(validator == null ? List.of() : validator.problems()); }
+
+    private void showProblem(HighwaysValidator.Problem p) { showItem(p.stationId(), p.lineKey()); }
+
+    /** Selects a station, or else a line; clears the search first if it hides the item. */
+    private void showItem(Integer stationId, String lineKey) {
+        if (data == null) return;
+        Station s = stationId == null ? null : index.station(stationId);
+        if (s == null && lineKey == null) return;
+        if (!searchField.getText().isEmpty()) { searchField.setText(""); searchTimer.stop(); stationListModel.setFilter(null); lineListModel.setFilter(null); }
+        if (s != null) { leftTabs.setSelectedIndex(0); stationList.setSelectedValue(s, true); }
+        else { leftTabs.setSelectedIndex(1); lineList.setSelectedValue(lineKey, true); }
+    }
+
     private void refreshLists() {
-        stationListModel.clear(); lineListModel.clear(); if (data == null) return;
-        data.stations.forEach(stationListModel::addElement);
-        data.lines.forEach((cat, lines) -> lines.keySet().forEach(ln -> lineListModel.addElement(cat + ": " + ln)));
-        setupTableEditors();
+        searchDirty = true; catalog.rebuild(data);
+        if (data == null) { stationListModel.setAll(List.of()); lineListModel.setAll(List.of()); return; }
+        EditorEvents.RefreshLists ev = new EditorEvents.RefreshLists(); ev.begin(); long t0 = System.nanoTime();
+        List<String> keys = new ArrayList<>();
+        data.lines.forEach((cat, lines) -> lines.keySet().forEach(ln -> keys.add(cat + ": " + ln)));
+        stationListModel.setAll(data.stations); lineListModel.setAll(keys);
+        ev.end(); PerfStats.record("refreshLists", System.nanoTime() - t0);
+        if (ev.shouldCommit()) { ev.stations = data.stations.size(); ev.lines = keys.size(); ev.commit(); }
+    }
+
+    /** Station list order for a {@link #SORT_ORDERS} index; ties fall back to the id. */
+    private static Comparator<Station> stationOrder(int order) {
+        Comparator<Station> byId = Comparator.comparingInt(s -> s.id);
+        return switch (order) {
+            case 1 -> byId;
+            case 2 -> Comparator.comparing(HighwayEditor::firstCategory).thenComparing(s -> s.name == null ? "" : s.name, String.CASE_INSENSITIVE_ORDER).thenComparing(byId);
+            default -> Comparator.comparing((Station s) -> s.name == null ? "" : s.name, String.CASE_INSENSITIVE_ORDER).thenComparing(byId);
+        };
+    }
+
+    private static String firstCategory(Station s) {
+        String min = "\uffff";
+        if (s.lines != null) for (int i = 0; i < s.lines.size(); i++) if (s.lines.category(i).compareTo(min) < 0) min = s.lines.category(i);
+        return min;
+    }
+
+    /** Line list order for a {@link #SORT_ORDERS} index over {@code "category: name"} keys. */
+    private static Comparator<String> lineOrder(int order) {
+        Comparator<String> byName = Comparator.comparing(k -> k.substring(k.indexOf(": ") + 2), String.CASE_INSENSITIVE_ORDER);
+        return switch (order) {
+            case 1 -> Comparator.<String, String>comparing(k -> k.substring(k.indexOf(": ") + 2)).thenComparing(Comparator.naturalOrder());
+            case 2 -> Comparator.<String, String>comparing(k -> k.substring(0, k.indexOf(": "))).thenComparing(byName).thenComparing(Comparator.naturalOrder());
+            default -> byName.thenComparing(Comparator.naturalOrder());
+        };
     }
     
+    /** Installs one combo editor per name column; each edit points it at the catalog's model for that row. */
     private void setupTableEditors() {
-        if (data == null) return;
-        JComboBox<String> catBox = new JComboBox<>(new Vector<>(data.lines.keySet())); catBox.setEditable(true);
-        connectionTable.getColumnModel().getColumn(0).setCellEditor(new DefaultCellEditor(catBox));
-        connectionTable.getColumnModel().getColumn(1).setCellEditor(new DefaultCellEditor(new JComboBox<String>()) {
+        connectionTable.getColumnModel().getColumn(0).setCellEditor(catalogEditor((t, row) -> catalog.categories()));
+        connectionTable.getColumnModel().getColumn(1).setCellEditor(catalogEditor((t, row) -> catalog.lines((String) t.getValueAt(row, 0))));
+        connectionTable.getColumnModel().getColumn(3).setCellEditor(catalogEditor((t, row) -> catalog.branches((String) t.getValueAt(row, 0), (String) t.getValueAt(row, 1))));
+    }
+
+    private static DefaultCellEditor catalogEditor(java.util.function.BiFunction<JTable, Integer, ComboBoxModel<String>> models) {
+        JComboBox<String> cb = new JComboBox<>(); cb.setEditable(true);
+        return new DefaultCellEditor(cb) {
             public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row, int column) {
-                String cat = (String) table.getValueAt(row, 0);
-                JComboBox<String> cb = new JComboBox<>(); cb.setEditable(true);
-                if (cat != null && data.lines.containsKey(cat)) for(String l : data.lines.get(cat).keySet()) cb.addItem(l);
-                else data.lines.values().forEach(m -> m.keySet().forEach(cb::addItem));
-                cb.setSelectedItem(value); return cb;
+                cb.setModel(models.apply(table, row));
+                return super.getTableCellEditorComponent(table, value, isSelected, row, column);
             }
-        });
-        Set<String> allBrs = new HashSet<>(Arrays.asList("Main line"));
-        data.lines.values().forEach(m -> m.values().forEach(ld -> allBrs.addAll(ld.branches.keySet())));
-        JComboBox<String> brBox = new JComboBox<>(new Vector<>(allBrs)); brBox.setEditable(true);
-        connectionTable.getColumnModel().getColumn(3).setCellEditor(new DefaultCellEditor(brBox));
+        };
     }
     
-    private void filterLists(String q) {
+    /**
+     * Filters both lists for the current search text. Keys are captured on the EDT; the index (re)build and the
+     * matching run on the search thread, and each list gets a single filter update. A query extending the last
+     * one only re-checks the last hits.
+     */
+    private void runSearch() {
         if (data == null) return;
-        stationListModel.clear();
-        data.stations.stream().filter(s -> s.name.toLowerCase().contains(q.toLowerCase())).forEach(stationListModel::addElement);
-        lineListModel.clear();
-        data.lines.forEach((cat, lines) -> lines.keySet().forEach(ln -> { String full = cat + ": " + ln; if (full.toLowerCase().contains(q.toLowerCase())) lineListModel.addElement(full); }));
+        String q = searchField.getText();
+        long gen = ++searchGeneration;
+        List<Station> stations = null; List<String> lineKeys = null; String[] stationKeys = null;
+        if (searchDirty) {
+            searchDirty = false;
+            stations = new ArrayList<>(data.stations);
+            stationKeys = new String[stations.size()];
+            for (int i = 0; i < stationKeys.length; i++) stationKeys[i] = stations.get(i).name + "\u0001" + stations.get(i).id;
+            lineKeys = new ArrayList<>();
+            for (Map.Entry<String, Map<String, LineData>> cat : data.lines.entrySet()) for (String ln : cat.getValue().keySet()) lineKeys.add(cat.getKey() + ": " + ln);
+        }
+        List<Station> fStations = stations; List<String> fLineKeys = lineKeys; String[] fStationKeys = stationKeys;
+        searchExecutor.execute(() -> {
+            EditorEvents.Search ev = new EditorEvents.Search(); ev.begin(); long t0 = System.nanoTime();
+            if (fStations != null) {
+                stationSearch = new SearchIndex<>(fStations, fStationKeys);
+                lineSearch = new SearchIndex<>(fLineKeys, fLineKeys.toArray(new String[0]));
+                lastStationHits = null; lastLineHits = null;
+            }
+            boolean refine = lastStationHits != null && SearchIndex.normalize(q).contains(SearchIndex.normalize(lastQuery));
+            int[] st = stationSearch.search(q, refine ? lastStationHits : null), ln = lineSearch.search(q, refine ? lastLineHits : null);
+            lastQuery = q; lastStationHits = st; lastLineHits = ln;
+            Set<Station> sh = Collections.newSetFromMap(new IdentityHashMap<>()); Set<String> lh = new HashSet<>();
+            for (int i : st) sh.add(stationSearch.get(i));
+            for (int i : ln) lh.add(lineSearch.get(i));
+            boolean all = SearchIndex.normalize(q).isEmpty();
+            ev.end(); PerfStats.record("search", System.nanoTime() - t0);
+            if (ev.shouldCommit()) { ev.query = q; ev.rebuilt = fStations != null; ev.refined = refine; ev.stationHits = st.length; ev.lineHits = ln.length; ev.commit(); }
+            SwingUtilities.invokeLater(() -> {
+                if (gen != searchGeneration) return;
+                stationListModel.setFilter(all ? null : sh::contains);
+                lineListModel.setFilter(all ? null : lh::contains);
+            });
+        });
     }
     
     private double roundTwoDecimals(double d) {
@@ -519,6 +1205,8 @@ public class HighwayEditor extends JFrame {
 
     private void setSaved(boolean saved) {
         this.saved = saved;
+        if (!saved) revision++;
+        if (!saved && journal != null && journal.failure() != null) statusLabel.setText("Edit journal stopped, save to keep your work: " + journal.failure().getMessage());
         if (currentFile != null) setTitle(currentFile.getName() + (saved ? "" : "*") + " - WorldMC Ice Highway Editor");
         else setTitle("WorldMC Ice Highway Editor");
     }
@@ -526,12 +1214,82 @@ public class HighwayEditor extends JFrame {
     class MapPanel extends JPanel {
         private HighwaysData data; private double zoom = 0.05, offX = 0, offZ = 0;
         private Station highlightedStation; private String highlightedLineKey; private Point hoverPoint;
-        private boolean pathEditing = false, orthogonal = true;
-        private Double[] draggedVertex = null;
-        private Double[] selectedVertex = null;
-        private Consumer<Double[]> vertexListener;
+        private boolean pathEditing = false, orthogonal = true, guides = true;
+        private VertexRef draggedVertex = null;
+        private VertexRef selectedVertex = null;
+        private Station draggedStation;
+        private double dragFromX, dragFromZ;
+        private Consumer<Point2D> vertexListener;
         private Consumer<Station> stationDragListener;
-        private Map<String, List<Double[]>> stagingBranches = new HashMap<>();
+        private Map<String, StagedBranch> stagingBranches = new LinkedHashMap<>();
+        private final MapIndex mapIndex = new MapIndex();
+        private final SpatialIndex<VertexRef> stagingVertexIndex = new SpatialIndex<>();
+        /** Staging segments, each keyed by the handle of its first vertex. */
+        private final SpatialIndex<VertexRef> stagingSegmentIndex = new SpatialIndex<>();
+        // Snapping: stations and other lines' corners (rebuilt lazily), and the staged corners not being dragged
+        private static final int SNAP_PIXELS = 8;
+        private static final Color GUIDE_COLOR = new Color(220, 0, 180);
+        private static final Stroke GUIDE_STROKE = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10, new float[]{6, 4}, 0);
+        private final SnapIndex networkSnaps = new SnapIndex(), stagingSnaps = new SnapIndex();
+        private boolean networkSnapsDirty = true;
+        private String networkSnapsExcluded;
+        private double guideX = Double.NaN, guideZ = Double.NaN;
+
+        /**
+         * Working copy of one branch of the highlighted line, with one stable handle per vertex. It reads the
+         * branch's own path until the first edit, which copies it; committing drops the copy again.
+         */
+        private class StagedBranch {
+            final String name; final Polyline source; Polyline copy; final List<VertexRef> refs = new ArrayList<>();
+            StagedBranch(String name, Polyline source) { this.name = name; this.source = source; for (int i = 0; i < source.size(); i++) refs.add(new VertexRef(this, i)); }
+            Polyline path() { return copy != null ? copy : source; }
+            Polyline writable() { if (copy == null) copy = source.copy(); return copy; }
+        }
+        /** A corner moved, inserted or deleted in the staging copy. Positions stay valid because edits are undone in order. */
+        private class StagingEdit implements UndoHistory.Edit {
+            final String name; final StagedBranch sb; final int index; final double ox, oz, nx, nz;
+            StagingEdit(String name, StagedBranch sb, int index, double ox, double oz, double nx, double nz) { this.name = name; this.sb = sb; this.index = index; this.ox = ox; this.oz = oz; this.nx = nx; this.nz = nz; }
+            public String name() { return name; }
+            public long bytes() { return 80; }
+            public void undo() {
+                switch (name) {
+                    case "Move Corner" -> moveStagingVertex(sb.refs.get(index), ox, oz);
+                    case "Add Corner" -> removeStagingVertex(sb.refs.get(index));
+                    default -> insertStagingVertex(sb, index, ox, oz);
+                }
+                afterStagingUndo();
+            }
+            public void redo() {
+                switch (name) {
+                    case "Move Corner" -> moveStagingVertex(sb.refs.get(index), nx, nz);
+                    case "Add Corner" -> insertStagingVertex(sb, index, nx, nz);
+                    default -> removeStagingVertex(sb.refs.get(index));
+                }
+                afterStagingUndo();
+            }
+        }
+        /** Handle to a staging vertex; its index is shifted when vertices are inserted or removed before it. */
+        private class VertexRef {
+            final StagedBranch owner; int index;
+            VertexRef(StagedBranch owner, int index) { this.owner = owner; this.index = index; }
+            double x() { return owner.path().x(index); }
+            double z() { return owner.path().z(index); }
+            VertexRef prev() { return index > 0 ? owner.refs.get(index-1) : null; }
+            VertexRef next() { return index < owner.refs.size()-1 ? owner.refs.get(index+1) : null; }
+        }
+        
+        // Render state, recomputed only when the highlight or the data changes
+        private final MapRenderer renderer = new MapRenderer();
+        private final TileCache tileCache = new TileCache();
+        private final BranchLod lod = new BranchLod();
+        private LineData highlightedLine;
+        private String tiledExclusionKey;
+        private final Set<LineData> relatedLines = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Set<Station> relatedStations = Collections.newSetFromMap(new IdentityHashMap<>());
+        private boolean perfOverlay;
+        private RouteGraph.Route route;
+        private long frameAvgNanos;
+        private static final Font PERF_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
         
         public MapPanel() {
             setBackground(Color.WHITE);
@@ -545,10 +1303,10 @@ public class HighwayEditor extends JFrame {
                             insertVertexAt(e.getX(), e.getY());
                             return;
                         }
-                        Double[] clicked = hitTestVertex(e.getX(), e.getY());
+                        VertexRef clicked = hitTestVertex(e.getX(), e.getY());
                         if (clicked != null) {
-                            selectedVertex = clicked;
-                            if (vertexListener != null) vertexListener.accept(selectedVertex);
+                            selectedVertex = clicked; draggedVertex = clicked; dragFromX = clicked.x(); dragFromZ = clicked.z(); prepareSnaps(clicked);
+                            if (vertexListener != null) vertexListener.accept(new Point2D.Double(clicked.x(), clicked.z()));
                             repaint();
                             return;
                         }
@@ -561,198 +1319,405 @@ public class HighwayEditor extends JFrame {
                 public void mouseDragged(MouseEvent e) {
                     if (draggedVertex != null) {
                         double nx = (e.getX() - getWidth()/2) / zoom + offX; double nz = (e.getY() - getHeight()/2) / zoom + offZ;
+                        boolean freeX = true, freeZ = true;
                         if (orthogonal && highlightedLineKey != null) {
-                            for (List<Double[]> verts : stagingBranches.values()) {
-                                int idx = verts.indexOf(draggedVertex);
-                                if (idx != -1) {
-                                    Double[] prev = (idx > 0) ? verts.get(idx-1) : null;
-                                    Double[] next = (idx < verts.size()-1) ? verts.get(idx+1) : null;
-                                    
-                                    // Smart L-Shape Snap Logic
-                                    // Configuration A: Match Prev X, Match Next Z
-                                    // Configuration B: Match Prev Z, Match Next X
-                                    // Simple Axis Snap if only 1 neighbor
-                                    
-                                    if (prev != null && next != null) {
-                                        // Option 1: Corner (PrevX, NextZ)
-                                        double d1 = Math.hypot(nx - prev[0], nz - next[1]);
-                                        // Option 2: Corner (NextX, PrevZ)
-                                        double d2 = Math.hypot(nx - next[0], nz - prev[1]);
-                                        
-                                        if (d1 < d2) { nx = prev[0]; nz = next[1]; }
-                                        else { nx = next[0]; nz = prev[1]; }
-                                    } else if (prev != null) {
-                                        if (Math.abs(prev[0]-nx) < Math.abs(prev[1]-nz)) nx = prev[0]; else nz = prev[1];
-                                    } else if (next != null) {
-                                        if (Math.abs(next[0]-nx) < Math.abs(next[1]-nz)) nx = next[0]; else nz = next[1];
-                                    }
-                                    break;
-                                }
+                            VertexRef prev = draggedVertex.prev(), next = draggedVertex.next();
+                            
+                            // Smart L-Shape Snap Logic
+                            // Configuration A: Match Prev X, Match Next Z
+                            // Configuration B: Match Prev Z, Match Next X
+                            // Simple Axis Snap if only 1 neighbor, leaving the other axis free for the guides
+                            
+                            if (prev != null && next != null) {
+                                // Option 1: Corner (PrevX, NextZ)
+                                double d1 = Math.hypot(nx - prev.x(), nz - next.z());
+                                // Option 2: Corner (NextX, PrevZ)
+                                double d2 = Math.hypot(nx - next.x(), nz - prev.z());
+                                
+                                if (d1 < d2) { nx = prev.x(); nz = next.z(); }
+                                else { nx = next.x(); nz = prev.z(); }
+                                freeX = freeZ = false;
+                            } else if (prev != null || next != null) {
+                                VertexRef n = prev != null ? prev : next;
+                                if (Math.abs(n.x()-nx) < Math.abs(n.z()-nz)) { nx = n.x(); freeX = false; } else { nz = n.z(); freeZ = false; }
                             }
                         }
-                        draggedVertex[0] = roundTwoDecimals(nx);
-                        draggedVertex[1] = roundTwoDecimals(nz);
-                        if (vertexListener != null) vertexListener.accept(draggedVertex);
+                        guideX = guideZ = Double.NaN;
+                        if (guides) {
+                            double tol = SNAP_PIXELS / zoom;
+                            if (freeX) { guideX = SnapIndex.nearer(nx, networkSnaps.snapX(nx, tol), stagingSnaps.snapX(nx, tol)); if (!Double.isNaN(guideX)) nx = guideX; }
+                            if (freeZ) { guideZ = SnapIndex.nearer(nz, networkSnaps.snapZ(nz, tol), stagingSnaps.snapZ(nz, tol)); if (!Double.isNaN(guideZ)) nz = guideZ; }
+                        }
+                        moveStagingVertex(draggedVertex, roundTwoDecimals(nx), roundTwoDecimals(nz));
+                        if (vertexListener != null) vertexListener.accept(new Point2D.Double(draggedVertex.x(), draggedVertex.z()));
                         repaint();
                     } else if (highlightedStation != null && leftTabs.getSelectedIndex() == 0 && findAt(e.getX(), e.getY()) == highlightedStation) {
+                        if (draggedStation == null) { draggedStation = highlightedStation; dragFromX = draggedStation.x; dragFromZ = draggedStation.z; }
                         highlightedStation.x = roundTwoDecimals(((e.getX() - getWidth()/2) / zoom + offX));
                         highlightedStation.z = roundTwoDecimals(((e.getY() - getHeight()/2) / zoom + offZ));
+                        stationChanged(highlightedStation);
                         if (stationDragListener != null) stationDragListener.accept(highlightedStation);
                         repaint();
                     } else {
                         offX -= (e.getX() - lastPt.x) / zoom; offZ -= (e.getY() - lastPt.y) / zoom; lastPt = e.getPoint(); repaint();
                     }
                 }
-                public void mouseReleased(MouseEvent e) { draggedVertex = null; }
+                public void mouseReleased(MouseEvent e) {
+                    if (draggedVertex != null) {
+                        if (draggedVertex.x() != dragFromX || draggedVertex.z() != dragFromZ) recordStagingEdit("Move Corner", draggedVertex, dragFromX, dragFromZ);
+                        draggedVertex = null; guideX = guideZ = Double.NaN; repaint();
+                    }
+                    if (draggedStation != null) {
+                        if (draggedStation.x != dragFromX || draggedStation.z != dragFromZ) recordStationMove(draggedStation, dragFromX, dragFromZ);
+                        draggedStation = null;
+                    }
+                    if (reloadQueued) { reloadQueued = false; reloadIfChanged(); }
+                }
                 public void mouseWheelMoved(MouseWheelEvent e) { double f = e.getWheelRotation() < 0 ? 1.2 : 0.8; zoom *= f; repaint(); }
                 public void mouseMoved(MouseEvent e) { hoverPoint = e.getPoint(); repaint(); }
             };
             addMouseListener(ma); addMouseMotionListener(ma); addMouseWheelListener(ma);
             setFocusable(true);
         }
-        public void setVertexSelectionListener(Consumer<Double[]> l) { this.vertexListener = l; }
+        public void setVertexSelectionListener(Consumer<Point2D> l) { this.vertexListener = l; }
         public void setStationDragListener(Consumer<Station> l) { this.stationDragListener = l; }
-        public void setData(HighwaysData d) { this.data = d; if (!d.stations.isEmpty()) { offX = d.stations.get(0).x; offZ = d.stations.get(0).z; } repaint(); }
-        public void highlightStation(Station s, boolean p) { this.highlightedStation = s; this.highlightedLineKey = null; if (p) { offX = s.x; offZ = s.z; } repaint(); }
+        public void setData(HighwaysData d) { this.data = d; mapIndex.rebuild(d); tileCache.clear(); lod.clear(); stagingBranches.clear(); clearStagingIndex(); selectedVertex = null; draggedVertex = null; route = null; networkSnapsDirty = true; if (!d.stations.isEmpty()) { offX = d.stations.get(0).x; offZ = d.stations.get(0).z; } repaint(); }
+        public void highlightStation(Station s, boolean p) { this.highlightedStation = s; this.highlightedLineKey = null; dropStaging(); refreshHighlightSets(); if (p) { offX = s.x; offZ = s.z; } repaint(); }
         public void highlightLine(String l, boolean p) {
             this.highlightedLineKey = l; this.highlightedStation = null;
-            stagingBranches.clear();
+            refreshHighlightSets();
             String[] parts = l.split(": "); LineData ld = data.lines.get(parts[0]).get(parts[1]);
-            for (Map.Entry<String, LineData.Branch> entry : ld.branches.entrySet()) {
-                List<Double[]> copy = new ArrayList<>();
-                for (Double[] v : entry.getValue().vertices) copy.add(new Double[]{v[0], v[1]});
-                stagingBranches.put(entry.getKey(), copy);
-            }
+            stageBranches(ld);
             if (p && !stagingBranches.isEmpty()) {
-                List<Double[]> first = stagingBranches.values().iterator().next();
-                if (!first.isEmpty()) { offX = first.get(0)[0]; offZ = first.get(0)[1]; }
+                Polyline first = stagingBranches.values().iterator().next().path();
+                if (!first.isEmpty()) { offX = first.x(0); offZ = first.z(0); }
             }
             repaint();
         }
-        public void commitPathChanges() {
-            if (highlightedLineKey == null) return;
+        /** Writes the staged paths into the line and returns what changed, by branch name; the corner edits collapse into that. */
+        public Map<String, PathDelta> commitPathChanges() {
+            Map<String, PathDelta> deltas = new LinkedHashMap<>();
+            if (highlightedLineKey == null) return deltas;
             String[] parts = highlightedLineKey.split(": "); LineData ld = data.lines.get(parts[0]).get(parts[1]);
-            for (Map.Entry<String, List<Double[]>> entry : stagingBranches.entrySet()) {
-                LineData.Branch br = ld.branches.get(entry.getKey());
-                if (br != null) { br.vertices.clear(); br.vertices.addAll(entry.getValue()); }
+            for (StagedBranch sb : stagingBranches.values()) {
+                LineData.Branch br = ld.branches.get(sb.name);
+                if (br == null || sb.copy == null) continue;
+                PathDelta d = PathDelta.of(br.vertices, sb.copy);
+                if (!d.isEmpty()) { deltas.put(sb.name, d); br.vertices.setAll(sb.copy); lod.invalidate(br); index.verticesChanged(br); }
+                if (br.vertices == sb.source) sb.copy = null;
+            }
+            history.removeIf(e -> e instanceof StagingEdit);
+            reindexLine(highlightedLineKey, ld);
+            return deltas;
+        }
+        public void stationChanged(Station s) {
+            networkSnapsDirty = true;
+            tileCache.invalidate(mapIndex.stationBounds(s), MapRenderer.STATION_MARGIN);
+            tileCache.invalidate(mapIndex.areaBounds(s), MapRenderer.AREA_MARGIN);
+            mapIndex.updateStation(s);
+            tileCache.invalidate(s.x, s.z, s.x, s.z, MapRenderer.STATION_MARGIN);
+            tileCache.invalidate(mapIndex.areaBounds(s), MapRenderer.AREA_MARGIN);
+            refreshHighlightSets();
+        }
+        public void stationRemoved(Station s) { networkSnapsDirty = true; tileCache.invalidate(mapIndex.stationBounds(s), MapRenderer.STATION_MARGIN); tileCache.invalidate(mapIndex.areaBounds(s), MapRenderer.AREA_MARGIN); mapIndex.removeStation(s); refreshHighlightSets(); }
+        public void lineChanged(String cat, String name) {
+            LineData ld = data.lines.get(cat).get(name);
+            ld.branches.values().forEach(lod::invalidate);
+            reindexLine(cat + ": " + name, ld);
+            // Unedited staging reads the line's own paths, so its handles must follow the change
+            if ((cat + ": " + name).equals(highlightedLineKey) && stagingBranches.values().stream().noneMatch(sb -> sb.copy != null)) {
+                stageBranches(ld); selectedVertex = null; draggedVertex = null;
+                if (vertexListener != null) vertexListener.accept(null);
             }
         }
-        public void clearHighlight() { highlightedStation = null; highlightedLineKey = null; stagingBranches.clear(); selectedVertex = null; stationList.clearSelection(); lineList.clearSelection(); pathEditing = false; repaint(); }
+        /** Throws away unapplied corner edits to a line, so the next {@link #lineChanged} stages its paths afresh. */
+        public void discardStaging(String cat, String name) { if ((cat + ": " + name).equals(highlightedLineKey)) stagingBranches.values().forEach(sb -> sb.copy = null); }
+        public void lineRemoved(String key) { reindexLine(key, null); if (key.equals(highlightedLineKey)) clearHighlight(); else refreshHighlightSets(); }
+        /** Re-indexes a line and drops the cached tiles under both its old and its new geometry. */
+        private void reindexLine(String key, LineData ld) {
+            networkSnapsDirty = true;
+            tileCache.invalidate(mapIndex.lineBounds(key), MapRenderer.STATION_MARGIN);
+            mapIndex.updateLine(key, ld);
+            tileCache.invalidate(mapIndex.lineBounds(key), MapRenderer.STATION_MARGIN);
+        }
+        
+        /** Recomputes which lines and stations are drawn at full opacity for the current highlight. */
+        private void refreshHighlightSets() {
+            relatedLines.clear(); relatedStations.clear(); highlightedLine = null;
+            if (data == null) return;
+            if (highlightedLineKey != null) {
+                String[] parts = highlightedLineKey.split(": ");
+                Map<String, LineData> cat = data.lines.get(parts[0]);
+                highlightedLine = cat == null ? null : cat.get(parts[1]);
+                if (highlightedLine != null) relatedLines.add(highlightedLine);
+                else highlightedLineKey = null;
+                relatedStations.addAll(index.stationsOn(parts[0], parts[1]));
+            }
+            if (highlightedStation != null) {
+                relatedStations.add(highlightedStation);
+                StationLines sl = highlightedStation.lines;
+                if (sl != null) for (int i = 0; i < sl.size(); i++) {
+                    Map<String, LineData> c = data.lines.get(sl.category(i));
+                    if (c != null && c.get(sl.line(i)) != null) relatedLines.add(c.get(sl.line(i)));
+                }
+            }
+            // The highlighted line is drawn in the overlay only, so tiles under it change with the highlight
+            String exclusion = highlightedLine == null ? null : highlightedLineKey;
+            if (!Objects.equals(exclusion, tiledExclusionKey)) {
+                if (tiledExclusionKey != null) tileCache.invalidate(mapIndex.lineBounds(tiledExclusionKey), MapRenderer.STATION_MARGIN);
+                if (exclusion != null) tileCache.invalidate(mapIndex.lineBounds(exclusion), MapRenderer.STATION_MARGIN);
+                tiledExclusionKey = exclusion;
+            }
+        }
+        public void clearHighlight() { route = null; highlightedStation = null; highlightedLineKey = null; refreshHighlightSets(); dropStaging(); stationList.clearSelection(); lineList.clearSelection(); pathEditing = false; repaint(); }
         public void setPathEditing(boolean b) { this.pathEditing = b; repaint(); }
         public boolean isPathEditing() { return pathEditing; }
         public boolean hasSelectedVertex() { return selectedVertex != null; }
-        public void updateSelectedVertexPosition(double x, double z) { if (selectedVertex != null) { selectedVertex[0] = x; selectedVertex[1] = z; repaint(); } }
+        public void updateSelectedVertexPosition(double x, double z) {
+            if (selectedVertex == null) return;
+            double ox = selectedVertex.x(), oz = selectedVertex.z();
+            moveStagingVertex(selectedVertex, x, z);
+            if (ox != x || oz != z) recordStagingEdit("Move Corner", selectedVertex, ox, oz);
+            repaint();
+        }
         
         public void resetCurrentPath() {
             if (highlightedLineKey == null) return;
             if (JOptionPane.showConfirmDialog(HighwayEditor.this, "Revert path to saved state?", "Confirm", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) return;
             String[] parts = highlightedLineKey.split(": "); LineData ld = data.lines.get(parts[0]).get(parts[1]);
-            stagingBranches.clear();
-            for (Map.Entry<String, LineData.Branch> entry : ld.branches.entrySet()) {
-                List<Double[]> copy = new ArrayList<>();
-                for (Double[] v : entry.getValue().vertices) copy.add(new Double[]{v[0], v[1]});
-                stagingBranches.put(entry.getKey(), copy);
-            }
+            stageBranches(ld);
+            selectedVertex = null; draggedVertex = null;
+            if (vertexListener != null) vertexListener.accept(null);
             repaint();
         }
         
         public void deleteSelectedVertex() {
             if (selectedVertex != null) {
-                for (List<Double[]> verts : stagingBranches.values()) if (verts.size() > 2) verts.remove(selectedVertex);
-                selectedVertex = null;
+                deleteStagingVertex(selectedVertex);
+                selectedVertex = null; draggedVertex = null;
                 repaint();
             }
         }
+        private boolean deleteStagingVertex(VertexRef v) {
+            double x = v.x(), z = v.z();
+            if (!removeStagingVertex(v)) return false;
+            history.add(new StagingEdit("Delete Corner", v.owner, v.index, x, z, x, z)); updateUndoMenu();
+            return true;
+        }
+        private void dropStaging() { stagingBranches.clear(); history.removeIf(e -> e instanceof StagingEdit); updateUndoMenu(); clearStagingIndex(); selectedVertex = null; draggedVertex = null; }
+        private void recordStagingEdit(String name, VertexRef v, double ox, double oz) {
+            history.add(new StagingEdit(name, v.owner, v.index, ox, oz, v.x(), v.z())); updateUndoMenu();
+        }
+        private void afterStagingUndo() {
+            selectedVertex = null; draggedVertex = null;
+            if (vertexListener != null) vertexListener.accept(null);
+            repaint();
+        }
+        
+        // --- Staging: working copies of the highlighted line, indexed for picking ---
+        private void stageBranches(LineData ld) {
+            stagingBranches.clear();
+            history.removeIf(e -> e instanceof StagingEdit);
+            for (Map.Entry<String, LineData.Branch> entry : ld.branches.entrySet()) stagingBranches.put(entry.getKey(), new StagedBranch(entry.getKey(), entry.getValue().vertices));
+            rebuildStagingIndex();
+        }
+        private void clearStagingIndex() { stagingVertexIndex.clear(); stagingSegmentIndex.clear(); }
+        private void rebuildStagingIndex() {
+            clearStagingIndex();
+            for (StagedBranch sb : stagingBranches.values()) for (VertexRef v : sb.refs) {
+                stagingVertexIndex.insertPoint(v, v.x(), v.z());
+                indexStagingSegment(v);
+            }
+        }
+        /** (Re-)indexes the segment starting at {@code v}, or drops it if {@code v} is the last vertex. */
+        private void indexStagingSegment(VertexRef v) {
+            VertexRef n = v.next();
+            if (n == null) stagingSegmentIndex.remove(v);
+            else stagingSegmentIndex.insert(v, v.x(), v.z(), n.x(), n.z());
+        }
+        private void moveStagingVertex(VertexRef v, double x, double z) {
+            v.owner.writable().set(v.index, x, z);
+            stagingVertexIndex.insertPoint(v, x, z);
+            if (v.prev() != null) indexStagingSegment(v.prev());
+            indexStagingSegment(v);
+        }
+        private VertexRef insertStagingVertex(StagedBranch sb, int idx, double x, double z) {
+            sb.writable().insert(idx, x, z);
+            VertexRef v = new VertexRef(sb, idx);
+            sb.refs.add(idx, v);
+            for (int i = idx + 1; i < sb.refs.size(); i++) sb.refs.get(i).index = i;
+            stagingVertexIndex.insertPoint(v, x, z);
+            if (v.prev() != null) indexStagingSegment(v.prev());
+            indexStagingSegment(v);
+            return v;
+        }
+        private boolean removeStagingVertex(VertexRef v) {
+            StagedBranch sb = v.owner;
+            if (sb.path().size() <= 2) return false;
+            VertexRef prev = v.prev();
+            sb.writable().remove(v.index); sb.refs.remove(v.index);
+            for (int i = v.index; i < sb.refs.size(); i++) sb.refs.get(i).index = i;
+            stagingVertexIndex.remove(v); stagingSegmentIndex.remove(v);
+            if (prev != null) indexStagingSegment(prev);
+            return true;
+        }
         
-        private Double[] hitTestVertex(int mx, int my) {
+        /** Indexes what the corner about to be dragged can line up with: everything but itself and its own line's saved path. */
+        private void prepareSnaps(VertexRef dragged) {
+            if (networkSnapsDirty || !Objects.equals(networkSnapsExcluded, highlightedLineKey)) {
+                networkSnaps.clear();
+                for (Station s : data.stations) networkSnaps.add(s.x, s.z);
+                data.lines.forEach((cat, lines) -> lines.forEach((name, ld) -> {
+                    if ((cat + ": " + name).equals(highlightedLineKey) || ld.branches == null) return;
+                    for (LineData.Branch br : ld.branches.values()) if (br.vertices != null) for (int i = 0; i < br.vertices.size(); i++) networkSnaps.add(br.vertices.x(i), br.vertices.z(i));
+                }));
+                networkSnaps.build();
+                networkSnapsDirty = false; networkSnapsExcluded = highlightedLineKey;
+            }
+            stagingSnaps.clear();
+            for (StagedBranch sb : stagingBranches.values()) for (VertexRef v : sb.refs) if (v != dragged) stagingSnaps.add(v.x(), v.z());
+            stagingSnaps.build();
+        }
+        private VertexRef hitTestVertex(int mx, int my) {
             int cx = getWidth() / 2, cy = getHeight() / 2;
-            for (List<Double[]> verts : stagingBranches.values()) for (Double[] v : verts) if (Math.hypot(mx - ((v[0]-offX)*zoom+cx), my - ((v[1]-offZ)*zoom+cy)) < 8) return v;
-            return null;
+            double px = (mx-cx)/zoom+offX, pz = (my-cy)/zoom+offZ, r = 8 / zoom;
+            VertexRef best = null; double bestD = r;
+            for (VertexRef v : stagingVertexIndex.query(px - r, pz - r, px + r, pz + r)) {
+                double d = Math.hypot(v.x() - px, v.z() - pz);
+                if (d < bestD) { bestD = d; best = v; }
+            }
+            return best;
         }
         private void insertVertexAt(int mx, int my) {
             int cx = getWidth()/2, cy = getHeight()/2;
-            for (List<Double[]> verts : stagingBranches.values()) for (int i = 0; i < verts.size() - 1; i++) {
-                double x1 = (verts.get(i)[0]-offX)*zoom+cx, z1 = (verts.get(i)[1]-offZ)*zoom+cy;
-                double x2 = (verts.get(i+1)[0]-offX)*zoom+cx, z2 = (verts.get(i+1)[1]-offZ)*zoom+cy;
-                if (Line2D.ptSegDist(x1, z1, x2, z2, mx, my) < 5) {
-                    double px = (mx-cx)/zoom+offX, pz = (my-cy)/zoom+offZ;
-                    double v1x = verts.get(i)[0], v1z = verts.get(i)[1];
-                    double v2x = verts.get(i+1)[0], v2z = verts.get(i+1)[1];
-                    double dx = v2x - v1x, dz = v2z - v1z;
-                    double t = ((px-v1x)*dx + (pz-v1z)*dz) / (dx*dx + dz*dz);
-                    t = Math.max(0, Math.min(1, t));
-                    double nx = roundTwoDecimals(v1x + t * dx);
-                    double nz = roundTwoDecimals(v1z + t * dz);
-                    verts.add(i + 1, new Double[]{nx, nz});
-                    repaint(); return;
-                }
+            double px = (mx-cx)/zoom+offX, pz = (my-cy)/zoom+offZ, r = 5 / zoom;
+            VertexRef hit = null; double bestD = r;
+            for (VertexRef a : stagingSegmentIndex.query(px - r, pz - r, px + r, pz + r)) {
+                VertexRef b = a.next();
+                double d = Line2D.ptSegDist(a.x(), a.z(), b.x(), b.z(), px, pz);
+                if (d < bestD) { bestD = d; hit = a; }
             }
+            if (hit == null) return;
+            double v1x = hit.x(), v1z = hit.z();
+            double v2x = hit.next().x(), v2z = hit.next().z();
+            double dx = v2x - v1x, dz = v2z - v1z;
+            double t = ((px-v1x)*dx + (pz-v1z)*dz) / (dx*dx + dz*dz);
+            t = Math.max(0, Math.min(1, t));
+            double nx = roundTwoDecimals(v1x + t * dx);
+            double nz = roundTwoDecimals(v1z + t * dz);
+            recordStagingEdit("Add Corner", insertStagingVertex(hit.owner, hit.index + 1, nx, nz), nx, nz);
+            repaint();
         }
         private void deleteVertexAt(int mx, int my) {
-            Double[] v = hitTestVertex(mx, my);
-            if (v != null) { for (List<Double[]> verts : stagingBranches.values()) if (verts.size() > 2) { verts.remove(v); if(v==selectedVertex) selectedVertex=null; } repaint(); }
+            VertexRef v = hitTestVertex(mx, my);
+            if (v != null && deleteStagingVertex(v)) { if (v == selectedVertex) selectedVertex = null; repaint(); }
         }
         private Object findAt(int mx, int my) {
             if (data == null) return null;
+            EditorEvents.FindAt ev = new EditorEvents.FindAt(); ev.begin(); long t0 = System.nanoTime();
             int cx = getWidth()/2, cy = getHeight()/2;
-            for (Station s : data.stations) if (Math.hypot(mx - ((s.x-offX)*zoom+cx), my - ((s.z-offZ)*zoom+cy)) < 15) return s;
-            for (Map.Entry<String, Map<String, LineData>> cat : data.lines.entrySet()) for (Map.Entry<String, LineData> entry : cat.getValue().entrySet()) for (LineData.Branch br : entry.getValue().branches.values()) for (int i = 0; i < br.vertices.size() - 1; i++) {
-                double x1 = (br.vertices.get(i)[0]-offX)*zoom+cx, z1 = (br.vertices.get(i)[1]-offZ)*zoom+cy;
-                double x2 = (br.vertices.get(i+1)[0]-offX)*zoom+cx, z2 = (br.vertices.get(i+1)[1]-offZ)*zoom+cy;
-                if (Line2D.ptSegDist(x1, z1, x2, z2, mx, my) < 5) return cat.getKey() + ": " + entry.getKey();
-            }
-            return null;
+            double px = (mx-cx)/zoom+offX, pz = (my-cy)/zoom+offZ;
+            Object hit = mapIndex.stationAt(px, pz, 15 / zoom);
+            int tested = mapIndex.lastTested();
+            if (hit == null) { hit = mapIndex.lineAt(px, pz, 5 / zoom); tested += mapIndex.lastTested(); }
+            if (hit == null) { hit = mapIndex.areaAt(px, pz); tested += mapIndex.lastTested(); }
+            ev.end(); PerfStats.record("findAt", System.nanoTime() - t0);
+            if (ev.shouldCommit()) { ev.tested = tested; ev.hit = String.valueOf(hit); ev.commit(); }
+            return hit;
         }
         @Override protected void paintComponent(Graphics g) {
             super.paintComponent(g); if (data == null) return;
+            EditorEvents.Paint ev = new EditorEvents.Paint(); ev.begin(); long t0 = System.nanoTime();
+            renderer.resetStats(); tileCache.resetStats();
             Graphics2D g2 = (Graphics2D) g; g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            int cx = getWidth()/2, cy = getHeight()/2;
-            data.lines.forEach((cat, lines) -> lines.forEach((name, line) -> {
-                boolean high = (highlightedLineKey != null && highlightedLineKey.equals(cat + ": " + name));
-                boolean rel = high || (highlightedStation != null && highlightedStation.lines != null && highlightedStation.lines.containsKey(cat) && highlightedStation.lines.get(cat).containsKey(name));
-                g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (highlightedStation == null && highlightedLineKey == null) ? 1.0f : (rel ? 1.0f : 0.15f)));
-                Color c = Color.BLACK; try { c = Color.decode("#" + line.color); } catch(Exception e){}
-                if (high && !stagingBranches.isEmpty()) {
-                    for (List<Double[]> verts : stagingBranches.values()) {
-                        drawPath(g2, verts, c, cx, cy);
-                        if (pathEditing) {
-                            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f));
-                            for (Double[] v : verts) {
-                                int vx = (int)((v[0]-offX)*zoom+cx), vz = (int)((v[1]-offZ)*zoom+cy);
-                                g2.setColor(v == selectedVertex || v == draggedVertex ? Color.RED : Color.BLUE); g2.fillRect(vx-4, vz-4, 8, 8);
-                            }
+            int w = getWidth(), h = getHeight(), cx = w/2, cy = h/2;
+            boolean focused = highlightedStation != null || highlightedLineKey != null || route != null;
+            // Snap the view origin to whole pixels so the overlay lines up exactly with the cached tiles
+            long ox = (long)Math.floor(offX*zoom) - cx, oz = (long)Math.floor(offZ*zoom) - cy;
+            g2.setComposite(focused ? MapRenderer.FADED : MapRenderer.OPAQUE);
+            tileCache.paint(g2, renderer, this::paintStaticLayer, zoom, ox, oz, w, h);
+            renderer.setView(zoom, (ox+cx)/zoom, (oz+cy)/zoom, cx, cy);
+            
+            // Dynamic overlay: lines and stations related to the highlight, staging vertices and labels
+            g2.setComposite(MapRenderer.OPAQUE);
+            double lineMargin = renderer.lineMargin();
+            for (LineData line : relatedLines) {
+                Color c = renderer.lineColor(line);
+                if (line == highlightedLine && !stagingBranches.isEmpty()) {
+                    for (StagedBranch sb : stagingBranches.values()) {
+                        renderer.drawPath(g2, sb.path(), c);
+                        if (pathEditing) for (VertexRef v : sb.refs) {
+                            int vx = (int)renderer.screenX(v.x()), vz = (int)renderer.screenZ(v.z());
+                            g2.setColor(v == selectedVertex || v == draggedVertex ? Color.RED : Color.BLUE); g2.fillRect(vx-4, vz-4, 8, 8);
                         }
                     }
-                } else { for (LineData.Branch br : line.branches.values()) drawPath(g2, br.vertices, c, cx, cy); }
-            }));
-            for (Station s : data.stations) {
-                boolean isSelected = (highlightedStation != null && highlightedStation.id == s.id);
-                boolean rel = isSelected || (highlightedLineKey != null && s.lines != null && s.lines.containsKey(highlightedLineKey.split(": ")[0]) && s.lines.get(highlightedLineKey.split(": ")[0]).containsKey(highlightedLineKey.split(": ")[1]));
-                g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (highlightedStation == null && highlightedLineKey == null) ? 1.0f : (rel ? 1.0f : 0.15f)));
-                drawStationIcon(g2, s, cx, cy);
-                if (isSelected || (hoverPoint != null && Math.hypot((s.x-offX)*zoom+cx - hoverPoint.x, (s.z-offZ)*zoom+cy - hoverPoint.y) < 12)) {
-                    g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f)); drawTextWithContour(g2, s.name, (int)((s.x-offX)*zoom+cx)+12, (int)((s.z-offZ)*zoom+cy)+5);
+                } else for (LineData.Branch br : line.branches.values()) {
+                    double[] bb = mapIndex.bounds(br);
+                    if (bb == null || renderer.isVisible(bb[0], bb[1], bb[2], bb[3], lineMargin, w, h)) renderer.drawPath(g2, lod.forZoom(br, zoom), c);
+                    else renderer.countCulled();
                 }
             }
+            for (Station s : relatedStations) if (renderer.isVisible(s.x, s.z, s.x, s.z, MapRenderer.STATION_MARGIN, w, h)) renderer.drawStationIcon(g2, s);
+            if (route != null) drawRoute(g2, w, h);
+            if (draggedVertex != null && (!Double.isNaN(guideX) || !Double.isNaN(guideZ))) {
+                g2.setColor(GUIDE_COLOR); g2.setStroke(GUIDE_STROKE);
+                if (!Double.isNaN(guideX)) { int x = (int)renderer.screenX(guideX); g2.drawLine(x, 0, x, h); }
+                if (!Double.isNaN(guideZ)) { int z = (int)renderer.screenZ(guideZ); g2.drawLine(0, z, w, z); }
+            }
+            if (highlightedStation != null) drawLabel(g2, highlightedStation);
+            if (hoverPoint != null) {
+                Station hover = mapIndex.stationAt(renderer.worldX(hoverPoint.x), renderer.worldZ(hoverPoint.y), 12 / zoom);
+                if (hover != null && hover != highlightedStation) drawLabel(g2, hover);
+            }
+            ev.end();
+            long frame = System.nanoTime() - t0;
+            frameAvgNanos = frameAvgNanos == 0 ? frame : (frameAvgNanos * 15 + frame) / 16;
+            PerfStats.record("paint", frame);
+            if (ev.shouldCommit()) {
+                ev.width = w; ev.height = h; ev.tilesDrawn = tileCache.tilesDrawn(); ev.tilesRendered = tileCache.tilesRendered();
+                ev.pathsDrawn = renderer.pathsDrawn(); ev.pathsCulled = renderer.pathsCulled(); ev.verticesDrawn = renderer.verticesDrawn(); ev.stationsDrawn = renderer.stationsDrawn();
+                ev.commit();
+            }
+            if (perfOverlay) drawPerfOverlay(g2, frame);
+        }
+        /** The planned route in its lines' colours, with its stops and labels at both ends. */
+        private void drawRoute(Graphics2D g2, int w, int h) {
+            for (RouteGraph.Leg leg : route.legs()) {
+                String[] parts = leg.lineKey().split(": ");
+                Map<String, LineData> cat = data.lines.get(parts[0]);
+                LineData ld = cat == null ? null : cat.get(parts[1]);
+                renderer.drawPath(g2, leg.path(), ld == null ? Color.GRAY : renderer.lineColor(ld));
+            }
+            for (RouteGraph.Leg leg : route.legs()) {
+                Station s = leg.to();
+                if (renderer.isVisible(s.x, s.z, s.x, s.z, MapRenderer.STATION_MARGIN, w, h)) renderer.drawStationIcon(g2, s);
+            }
+            renderer.drawStationIcon(g2, route.from());
+            drawLabel(g2, route.from()); drawLabel(g2, route.to());
+        }
+        /** Frame time, this frame's draw counts and the latest timing of every instrumented operation. */
+        private void drawPerfOverlay(Graphics2D g2, long frameNanos) {
+            List<String> rows = new ArrayList<>();
+            rows.add(String.format(Locale.US, "frame %.2f ms (avg %.2f)", frameNanos / 1e6, frameAvgNanos / 1e6));
+            rows.add("tiles " + tileCache.tilesDrawn() + " drawn, " + tileCache.tilesRendered() + " rendered");
+            rows.add("branches " + renderer.pathsDrawn() + " drawn, " + renderer.pathsCulled() + " culled");
+            rows.add("vertices " + renderer.verticesDrawn() + ", stations " + renderer.stationsDrawn());
+            PerfStats.latest().forEach((op, ns) -> { if (!op.equals("paint")) rows.add(String.format(Locale.US, "%s %.2f ms", op, ns / 1e6)); });
+            g2.setFont(PERF_FONT);
+            FontMetrics fm = g2.getFontMetrics();
+            int lh = fm.getHeight(), bw = 0;
+            for (String row : rows) bw = Math.max(bw, fm.stringWidth(row));
+            g2.setColor(new Color(0, 0, 0, 170)); g2.fillRect(8, 8, bw + 12, rows.size() * lh + 8);
+            g2.setColor(Color.WHITE);
+            for (int i = 0; i < rows.size(); i++) g2.drawString(rows.get(i), 14, 12 + fm.getAscent() + i * lh);
         }
-        private void drawTextWithContour(Graphics2D g2, String t, int x, int y) {
-            g2.setFont(new Font("SansSerif", Font.BOLD, 12)); g2.setColor(Color.WHITE);
-            for (int i = -1; i <= 1; i++) for (int j = -1; j <= 1; j++) if (i != 0 || j != 0) g2.drawString(t, x + i, y + j);
-            g2.setColor(Color.BLACK); g2.drawString(t, x, y);
-        }
-        private void drawPath(Graphics2D g2, List<Double[]> v, Color c, int cx, int cy) {
-            if (v.size() < 2) return;
-            Path2D path = new Path2D.Double(); path.moveTo((v.get(0)[0]-offX)*zoom+cx, (v.get(0)[1]-offZ)*zoom+cy);
-            for (int i = 1; i < v.size(); i++) path.lineTo((v.get(i)[0]-offX)*zoom+cx, (v.get(i)[1]-offZ)*zoom+cy);
-            g2.setColor(Color.BLACK); g2.setStroke(new BasicStroke((float)(8*zoom+5), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND)); g2.draw(path);
-            g2.setColor(c); g2.setStroke(new BasicStroke((float)(4*zoom+3), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND)); g2.draw(path);
-        }
-        private void drawStationIcon(Graphics2D g2, Station s, int cx, int cy) {
-            int x = (int)((s.x-offX)*zoom+cx), z = (int)((s.z-offZ)*zoom+cy);
-            int sz = (int)Math.min(Math.max(10, 15*zoom*10), 20); g2.setColor(Color.BLACK);
-            if (s.type != null && (s.type.contains("jct") || s.type.contains("inter"))) { g2.fillRect(x-sz/2, z-sz/2, sz, sz); g2.setColor(Color.WHITE); g2.fillRect(x-sz/2+2, z-sz/2+2, sz-4, sz-4); }
-            else if (s.type != null && s.type.contains("elev")) { g2.setStroke(new BasicStroke(3)); g2.drawLine(x-sz/2, z+sz/2, x-sz/2, z); g2.drawLine(x-sz/2, z, x, z); g2.drawLine(x, z, x, z-sz/2); g2.drawLine(x, z-sz/2, x+sz/2, z-sz/2); }
-            else { g2.fillOval(x-sz/2, z-sz/2, sz, sz); g2.setColor(Color.WHITE); g2.fillOval(x-sz/2+2, z-sz/2+2, sz-4, sz-4); }
+        public void setPerfOverlay(boolean on) { perfOverlay = on; repaint(); }
+        public void setSnapGrid(double step) { networkSnaps.setGrid(step); }
+        public void setRoute(RouteGraph.Route r) { route = r; repaint(); }
+        /** Static layer: every line except the highlighted one, then every station, all fully opaque. */
+        private void paintStaticLayer(Graphics2D g2, MapRenderer r, int w, int h) { r.paintNetwork(g2, data, mapIndex, lod, highlightedLine, w, h); }
+        private void drawLabel(Graphics2D g2, Station s) {
+            renderer.drawTextWithContour(g2, s.name, (int)renderer.screenX(s.x)+12, (int)renderer.screenZ(s.z)+5);
         }
     }
     public static void main(String[] args) { SwingUtilities.invokeLater(() -> new HighwayEditor().setVisible(true)); }
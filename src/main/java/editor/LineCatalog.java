@@ -0,0 +1,109 @@
+package editor;
+
+import editor.models.HighwaysData;
+import editor.models.LineData;
+import javax.swing.AbstractListModel;
+import javax.swing.ComboBoxModel;
+import java.util.*;
+
+/**
+ * Sorted category, line and branch names for the connection table's combo boxes. The models are shared and
+ * kept up to date as lines and branches are added or removed, so opening a cell editor never scans the map.
+ */
+public class LineCatalog {
+    public static final String MAIN_LINE = "Main line";
+
+    private final Names categories = new Names();
+    private final Names allLines = new Names();
+    private final Names allBranches = new Names();
+    private final Map<String, Names> linesByCategory = new HashMap<>();
+    private final Map<String, Names> branchesByLine = new HashMap<>();
+
+    public LineCatalog() { allBranches.add(MAIN_LINE); }
+
+    public void rebuild(HighwaysData data) {
+        categories.clear(); allLines.clear(); allBranches.clear(); allBranches.add(MAIN_LINE);
+        linesByCategory.clear(); branchesByLine.clear();
+        if (data != null && data.lines != null) data.lines.forEach((cat, lines) -> lines.forEach((ln, ld) -> addLine(cat, ln, ld)));
+    }
+
+    /** Adds a line, or for a line already listed just the branches it does not have yet. */
+    public void addLine(String category, String line, LineData ld) {
+        Names lines = linesByCategory.computeIfAbsent(category, k -> new Names());
+        if (lines.getSize() == 0) categories.add(category);
+        if (!lines.contains(line)) { lines.add(line); allLines.add(line); }
+        Names brs = branchesByLine.computeIfAbsent(key(category, line), k -> { Names n = new Names(); n.add(MAIN_LINE); return n; });
+        if (ld != null && ld.branches != null) for (String b : ld.branches.keySet()) if (!brs.contains(b)) { brs.add(b); allBranches.add(b); }
+    }
+
+    public void removeLine(String category, String line) {
+        Names lines = linesByCategory.get(category);
+        if (lines == null || !lines.contains(line)) return;
+        lines.remove(line); allLines.remove(line);
+        if (lines.getSize() == 0) { linesByCategory.remove(category); categories.remove(category); }
+        Names brs = branchesByLine.remove(key(category, line));
+        if (brs != null) for (String b : brs.items) if (!b.equals(MAIN_LINE)) allBranches.remove(b);
+    }
+
+    public void addBranch(String category, String line, String branch) {
+        Names brs = branchesByLine.get(key(category, line));
+        if (brs != null && !brs.contains(branch)) { brs.add(branch); allBranches.add(branch); }
+    }
+
+    public ComboBoxModel<String> categories() { return categories; }
+
+    /** Lines of the category, or every line name if the category is unknown. */
+    public ComboBoxModel<String> lines(String category) {
+        Names n = category == null ? null : linesByCategory.get(category);
+        return n != null ? n : allLines;
+    }
+
+    /** Branches of the line, or every branch name if the line is unknown. Always offers {@link #MAIN_LINE}. */
+    public ComboBoxModel<String> branches(String category, String line) {
+        Names n = branchesByLine.get(key(category, line));
+        return n != null ? n : allBranches;
+    }
+
+    private static String key(String category, String line) { return category + ": " + line; }
+
+    /** Sorted name list that counts duplicates, so a name shared by several lines stays until the last goes. */
+    private static final class Names extends AbstractListModel<String> implements ComboBoxModel<String> {
+        private final List<String> items = new ArrayList<>();
+        private final Map<String, Integer> counts = new HashMap<>();
+        private Object selected;
+
+        boolean contains(String s) { return counts.containsKey(s); }
+
+        void add(String s) {
+            if (counts.merge(s, 1, Integer::sum) > 1) return;
+            int i = -Collections.binarySearch(items, s) - 1;
+            items.add(i, s);
+            fireIntervalAdded(this, i, i);
+        }
+
+        void remove(String s) {
+            Integer c = counts.get(s);
+            if (c == null) return;
+            if (c > 1) { counts.put(s, c - 1); return; }
+            counts.remove(s);
+            int i = Collections.binarySearch(items, s);
+            items.remove(i);
+            fireIntervalRemoved(this, i, i);
+        }
+
+        void clear() {
+            int n = items.size();
+            items.clear(); counts.clear();
+            if (n > 0) fireIntervalRemoved(this, 0, n - 1);
+        }
+
+        @Override public int getSize() { return items.size(); }
+        @Override public String getElementAt(int i) { return items.get(i); }
+        @Override public Object getSelectedItem() { return selected; }
+        @Override public void setSelectedItem(Object o) {
+            if (Objects.equals(selected, o)) return;
+            selected = o;
+            fireContentsChanged(this, -1, -1);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package editor;
+
+import editor.models.*;
+import java.awt.geom.Line2D;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Spatial index over the committed network (stations, their areas and branch segments) used for picking and culling.
+ * Kept in sync incrementally by the editor whenever a station or a line changes.
+ */
+public class MapIndex {
+    /** One straight piece of a committed branch, tagged with the "category: line" key it belongs to. */
+    public record Segment(String lineKey, double x1, double z1, double x2, double z2) {}
+
+    /** Polygon {@code polygon} of a station's areas. */
+    public record AreaRef(Station station, int polygon) {}
+
+    private final SpatialIndex<Station> stations = new SpatialIndex<>();
+    private final SpatialIndex<Segment> segments = new SpatialIndex<>();
+    private final SpatialIndex<AreaRef> areas = new SpatialIndex<>();
+    private final Map<Station, List<AreaRef>> stationAreas = new IdentityHashMap<>();
+    private final Map<String, List<Segment>> lineSegments = new HashMap<>();
+    private final Map<String, List<LineData.Branch>> lineBranches = new HashMap<>();
+    private final Map<LineData.Branch, double[]> branchBounds = new IdentityHashMap<>();
+    private final Map<String, double[]> lineBounds = new HashMap<>();
+    private int lastTested;
+
+    public void rebuild(HighwaysData data) {
+        stations.clear(); segments.clear(); areas.clear(); stationAreas.clear(); lineSegments.clear(); lineBranches.clear(); branchBounds.clear(); lineBounds.clear();
+        if (data == null) return;
+        if (data.stations != null) for (Station s : data.stations) updateStation(s);
+        if (data.lines != null) data.lines.forEach((cat, lines) -> lines.forEach((name, ld) -> updateLine(cat + ": " + name, ld)));
+    }
+
+    public void updateStation(Station s) {
+        stations.insertPoint(s, s.x, s.z);
+        removeAreas(s);
+        if (s.areas == null || s.areas.size() == 0) return;
+        List<AreaRef> refs = new ArrayList<>(s.areas.size());
+        for (int i = 0; i < s.areas.size(); i++) {
+            if (s.areas.points(i) < 3) continue;
+            AreaRef a = new AreaRef(s, i);
+            areas.insert(a, s.areas.minX(i), s.areas.minZ(i), s.areas.maxX(i), s.areas.maxZ(i));
+            refs.add(a);
+        }
+        stationAreas.put(s, refs);
+    }
+
+    public void removeStation(Station s) { stations.remove(s); removeAreas(s); }
+
+    private void removeAreas(Station s) {
+        List<AreaRef> old = stationAreas.remove(s);
+        if (old != null) for (AreaRef a : old) areas.remove(a);
+    }
+
+    /** Re-indexes all segments of one line; pass {@code null} to drop the line. */
+    public void updateLine(String key, LineData ld) {
+        List<Segment> old = lineSegments.remove(key);
+        if (old != null) for (Segment seg : old) segments.remove(seg);
+        List<LineData.Branch> oldBranches = lineBranches.remove(key);
+        if (oldBranches != null) for (LineData.Branch br : oldBranches) branchBounds.remove(br);
+        lineBounds.remove(key);
+        if (ld == null || ld.branches == null) return;
+        List<Segment> segs = new ArrayList<>();
+        List<LineData.Branch> brs = new ArrayList<>();
+        for (LineData.Branch br : ld.branches.values()) {
+            if (br.vertices == null) continue;
+            double[] bb = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+            Polyline v = br.vertices;
+            for (int i = 0; i < v.size(); i++) {
+                double ax = v.x(i), az = v.z(i);
+                bb[0] = Math.min(bb[0], ax); bb[1] = Math.min(bb[1], az); bb[2] = Math.max(bb[2], ax); bb[3] = Math.max(bb[3], az);
+                if (i == v.size() - 1) break;
+                Segment seg = new Segment(key, ax, az, v.x(i+1), v.z(i+1));
+                segments.insert(seg, ax, az, seg.x2, seg.z2);
+                segs.add(seg);
+            }
+            branchBounds.put(br, bb); brs.add(br);
+            if (br.vertices.isEmpty()) continue;
+            double[] lb = lineBounds.computeIfAbsent(key, k -> new double[]{Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE});
+            lb[0] = Math.min(lb[0], bb[0]); lb[1] = Math.min(lb[1], bb[1]); lb[2] = Math.max(lb[2], bb[2]); lb[3] = Math.max(lb[3], bb[3]);
+        }
+        lineSegments.put(key, segs); lineBranches.put(key, brs);
+    }
+
+    public void removeLine(String key) { updateLine(key, null); }
+
+    /** World bounds {minX, minZ, maxX, maxZ} of a committed branch, or null if it has not been indexed. */
+    public double[] bounds(LineData.Branch br) { return branchBounds.get(br); }
+
+    /** World bounds of all committed branches of a line, or null if it has no vertices. */
+    public double[] lineBounds(String key) { return lineBounds.get(key); }
+
+    /** World bounds the station is currently indexed at, which lags behind its fields until {@link #updateStation}. */
+    public double[] stationBounds(Station s) { return stations.bounds(s); }
+
+    /** World bounds of the station's areas as currently indexed, or null if it has none. */
+    public double[] areaBounds(Station s) {
+        List<AreaRef> refs = stationAreas.get(s);
+        if (refs == null || refs.isEmpty()) return null;
+        double[] bb = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (AreaRef a : refs) {
+            double[] b = areas.bounds(a);
+            bb[0] = Math.min(bb[0], b[0]); bb[1] = Math.min(bb[1], b[1]); bb[2] = Math.max(bb[2], b[2]); bb[3] = Math.max(bb[3], b[3]);
+        }
+        return bb;
+    }
+
+    /** Visits every area polygon whose bounding box overlaps the world rectangle. */
+    public void areasIn(double minX, double minZ, double maxX, double maxZ, Consumer<AreaRef> visitor) { areas.query(minX, minZ, maxX, maxZ, visitor); }
+
+    /** Visits every station inside the world rectangle. */
+    public void stationsIn(double minX, double minZ, double maxX, double maxZ, Consumer<Station> visitor) { stations.query(minX, minZ, maxX, maxZ, visitor); }
+
+    /** Candidates examined by the last {@link #stationAt}, {@link #lineAt} or {@link #areaAt}, for instrumentation. */
+    public int lastTested() { return lastTested; }
+
+    /** Nearest station within {@code radius} world units of the point, or null. */
+    public Station stationAt(double x, double z, double radius) {
+        Station best = null; double bestD = radius;
+        List<Station> candidates = stations.query(x - radius, z - radius, x + radius, z + radius);
+        lastTested = candidates.size();
+        for (Station s : candidates) {
+            double d = Math.hypot(s.x - x, s.z - z);
+            if (d < bestD) { bestD = d; best = s; }
+        }
+        return best;
+    }
+
+    /** Key of the line with the nearest segment within {@code radius} world units of the point, or null. */
+    public String lineAt(double x, double z, double radius) {
+        String best = null; double bestD = radius;
+        List<Segment> candidates = segments.query(x - radius, z - radius, x + radius, z + radius);
+        lastTested = candidates.size();
+        for (Segment seg : candidates) {
+            double d = Line2D.ptSegDist(seg.x1, seg.z1, seg.x2, seg.z2, x, z);
+            if (d < bestD) { bestD = d; best = seg.lineKey; }
+        }
+        return best;
+    }
+
+    /** Station owning the smallest area polygon that contains the point, or null. */
+    public Station areaAt(double x, double z) {
+        Station best = null; double bestArea = Double.MAX_VALUE;
+        List<AreaRef> candidates = areas.query(x, z, x, z);
+        lastTested = candidates.size();
+        for (AreaRef a : candidates) {
+            Areas ar = a.station().areas;
+            if (ar == null || a.polygon() >= ar.size() || !ar.contains(a.polygon(), x, z)) continue;
+            double size = ar.area(a.polygon());
+            if (size < bestArea) { bestArea = size; best = a.station(); }
+        }
+        return best;
+    }
+}
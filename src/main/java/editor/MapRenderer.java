@@ -0,0 +1,127 @@
+package editor;
+
+import editor.models.*;
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+/**
+ * Drawing routines for the network, with the per-frame state (strokes, colours, path buffer) cached
+ * so that painting a branch or a station does not allocate.
+ * World coordinates map to the screen as {@code (x - offX) * zoom + cx}, exactly like MapPanel.
+ */
+public class MapRenderer {
+    public static final Font LABEL_FONT = new Font("SansSerif", Font.BOLD, 12);
+    public static final AlphaComposite OPAQUE = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f);
+    public static final AlphaComposite FADED = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.15f);
+    private static final BasicStroke ELEVATOR_STROKE = new BasicStroke(3);
+    private static final BasicStroke AREA_STROKE = new BasicStroke(1);
+    private static final Color AREA_FILL = new Color(70, 130, 180, 50), AREA_OUTLINE = new Color(70, 130, 180, 170);
+    /** Largest distance in pixels that anything drawn for a station reaches from its centre. */
+    public static final int STATION_MARGIN = 12;
+    /** How far in pixels an area's outline reaches past its bounding box. */
+    public static final int AREA_MARGIN = 1;
+
+    private double zoom = 1, offX, offZ; private int cx, cy;
+    private double strokeZoom = Double.NaN;
+    private BasicStroke outlineStroke, fillStroke;
+    private final Path2D.Double path = new Path2D.Double();
+    private final Map<LineData, LineStyle> styles = new WeakHashMap<>();
+    private int pathsDrawn, pathsCulled, verticesDrawn, stationsDrawn;
+
+    /** Colour decoded from {@code LineData.color}; re-decoded only when the hex string changes. */
+    private static final class LineStyle { String hex; Color color; }
+
+    public void setView(double zoom, double offX, double offZ, int cx, int cy) {
+        this.zoom = zoom; this.offX = offX; this.offZ = offZ; this.cx = cx; this.cy = cy;
+        if (zoom != strokeZoom) {
+            strokeZoom = zoom;
+            outlineStroke = new BasicStroke((float)(8*zoom+5), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+            fillStroke = new BasicStroke((float)(4*zoom+3), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        }
+    }
+
+    public double getZoom() { return zoom; }
+
+    /** Draw counters since the last reset, for instrumentation. */
+    public void resetStats() { pathsDrawn = pathsCulled = verticesDrawn = stationsDrawn = 0; }
+    public int pathsDrawn() { return pathsDrawn; }
+    public int pathsCulled() { return pathsCulled; }
+    public int verticesDrawn() { return verticesDrawn; }
+    public int stationsDrawn() { return stationsDrawn; }
+    public void countCulled() { pathsCulled++; }
+    public double screenX(double x) { return (x-offX)*zoom+cx; }
+    public double screenZ(double z) { return (z-offZ)*zoom+cy; }
+    public double worldX(double sx) { return (sx-cx)/zoom+offX; }
+    public double worldZ(double sz) { return (sz-cy)/zoom+offZ; }
+    /** Half the width of a drawn line in pixels, i.e. how far a branch spills outside its vertex bounds. */
+    public double lineMargin() { return 4*zoom+3; }
+
+    /** Whether a world box, grown by {@code marginPx} on screen, overlaps the {@code width x height} viewport. */
+    public boolean isVisible(double minX, double minZ, double maxX, double maxZ, double marginPx, int width, int height) {
+        return screenX(maxX) >= -marginPx && screenX(minX) <= width + marginPx && screenZ(maxZ) >= -marginPx && screenZ(minZ) <= height + marginPx;
+    }
+
+    public Color lineColor(LineData line) {
+        LineStyle st = styles.computeIfAbsent(line, k -> new LineStyle());
+        if (st.color == null || !Objects.equals(st.hex, line.color)) {
+            st.hex = line.color;
+            try { st.color = Color.decode("#" + line.color); } catch (Exception e) { st.color = Color.BLACK; }
+        }
+        return st.color;
+    }
+
+    public void drawTextWithContour(Graphics2D g2, String t, int x, int y) {
+        g2.setFont(LABEL_FONT); g2.setColor(Color.WHITE);
+        for (int i = -1; i <= 1; i++) for (int j = -1; j <= 1; j++) if (i != 0 || j != 0) g2.drawString(t, x + i, y + j);
+        g2.setColor(Color.BLACK); g2.drawString(t, x, y);
+    }
+
+    public void drawPath(Graphics2D g2, Polyline v, Color c) {
+        if (v.size() < 2) return;
+        pathsDrawn++; verticesDrawn += v.size();
+        path.reset(); path.moveTo(screenX(v.x(0)), screenZ(v.z(0)));
+        for (int i = 1; i < v.size(); i++) path.lineTo(screenX(v.x(i)), screenZ(v.z(i)));
+        g2.setColor(Color.BLACK); g2.setStroke(outlineStroke); g2.draw(path);
+        g2.setColor(c); g2.setStroke(fillStroke); g2.draw(path);
+    }
+
+    public void drawStationIcon(Graphics2D g2, Station s) {
+        stationsDrawn++;
+        int x = (int)screenX(s.x), z = (int)screenZ(s.z);
+        int sz = (int)Math.min(Math.max(10, 15*zoom*10), 20); g2.setColor(Color.BLACK);
+        if (s.type != null && (s.type.contains("jct") || s.type.contains("inter"))) { g2.fillRect(x-sz/2, z-sz/2, sz, sz); g2.setColor(Color.WHITE); g2.fillRect(x-sz/2+2, z-sz/2+2, sz-4, sz-4); }
+        else if (s.type != null && s.type.contains("elev")) { g2.setStroke(ELEVATOR_STROKE); g2.drawLine(x-sz/2, z+sz/2, x-sz/2, z); g2.drawLine(x-sz/2, z, x, z); g2.drawLine(x, z, x, z-sz/2); g2.drawLine(x, z-sz/2, x+sz/2, z-sz/2); }
+        else { g2.fillOval(x-sz/2, z-sz/2, sz, sz); g2.setColor(Color.WHITE); g2.fillOval(x-sz/2+2, z-sz/2+2, sz-4, sz-4); }
+    }
+
+    /** Fills and outlines one polygon of a station's areas; polygons smaller than a pixel are skipped. */
+    public void drawArea(Graphics2D g2, Areas a, int i) {
+        if ((a.maxX(i) - a.minX(i)) * zoom < 1 && (a.maxZ(i) - a.minZ(i)) * zoom < 1) return;
+        path.reset(); path.moveTo(screenX(a.x(i, 0)), screenZ(a.z(i, 0)));
+        for (int k = 1; k < a.points(i); k++) path.lineTo(screenX(a.x(i, k)), screenZ(a.z(i, k)));
+        path.closePath();
+        g2.setColor(AREA_FILL); g2.fill(path);
+        g2.setColor(AREA_OUTLINE); g2.setStroke(AREA_STROKE); g2.draw(path);
+    }
+
+    /** Every visible area, every line except {@code exclude} (culled, at the zoom's level of detail), then every visible station. */
+    public void paintNetwork(Graphics2D g2, HighwaysData data, MapIndex index, BranchLod lod, LineData exclude, int w, int h) {
+        int am = AREA_MARGIN;
+        index.areasIn(worldX(-am), worldZ(-am), worldX(w + am), worldZ(h + am), a -> drawArea(g2, a.station().areas, a.polygon()));
+        double margin = lineMargin();
+        for (Map<String, LineData> lines : data.lines.values()) for (LineData line : lines.values()) {
+            if (line == exclude) continue;
+            Color c = lineColor(line);
+            for (LineData.Branch br : line.branches.values()) {
+                double[] bb = index.bounds(br);
+                if (bb == null || isVisible(bb[0], bb[1], bb[2], bb[3], margin, w, h)) drawPath(g2, lod.forZoom(br, zoom), c);
+                else pathsCulled++;
+            }
+        }
+        int m = STATION_MARGIN;
+        index.stationsIn(worldX(-m), worldZ(-m), worldX(w + m), worldZ(h + m), s -> drawStationIcon(g2, s));
+    }
+}
@@ -0,0 +1,64 @@
+package editor;
+
+import editor.merge.SequenceDiff;
+import editor.models.Polyline;
+import java.awt.geom.Point2D;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * The difference between two versions of a path as {@link SequenceDiff} hunks plus only the vertices they
+ * replace, so undoing a one-corner change to a long line keeps a few dozen bytes rather than a copy of it.
+ */
+public final class PathDelta {
+    private final List<SequenceDiff.Hunk> hunks;
+    private final double[] removed, added;
+
+    private PathDelta(List<SequenceDiff.Hunk> hunks, double[] removed, double[] added) { this.hunks = hunks; this.removed = removed; this.added = added; }
+
+    /** Delta turning {@code from} into {@code to}; empty if they have the same vertices. */
+    public static PathDelta of(Polyline from, Polyline to) {
+        List<SequenceDiff.Hunk> hunks = SequenceDiff.diff(view(from), view(to));
+        int r = 0, a = 0;
+        for (SequenceDiff.Hunk h : hunks) { r += h.removed(); a += h.added(); }
+        double[] removed = new double[2*r], added = new double[2*a];
+        r = a = 0;
+        for (SequenceDiff.Hunk h : hunks) {
+            for (int i = h.baseFrom(); i < h.baseTo(); i++) { removed[r++] = from.x(i); removed[r++] = from.z(i); }
+            for (int i = h.otherFrom(); i < h.otherTo(); i++) { added[a++] = to.x(i); added[a++] = to.z(i); }
+        }
+        return new PathDelta(hunks, removed, added);
+    }
+
+    public boolean isEmpty() { return hunks.isEmpty(); }
+
+    public long bytes() { return 48 + 32L * hunks.size() + 8L * (removed.length + added.length); }
+
+    /** Turns the later version back into the earlier one, in place. */
+    public void undo(Polyline p) { apply(p, true); }
+
+    /** Turns the earlier version into the later one, in place. */
+    public void redo(Polyline p) { apply(p, false); }
+
+    private void apply(Polyline p, boolean back) {
+        if (hunks.isEmpty()) return;
+        double[] ins = back ? added : removed, outs = back ? removed : added;
+        Polyline out = new Polyline(p.size() + (outs.length - ins.length) / 2);
+        int pos = 0, o = 0;
+        for (SequenceDiff.Hunk h : hunks) {
+            int from = back ? h.otherFrom() : h.baseFrom(), n = back ? h.added() : h.removed(), m = back ? h.removed() : h.added();
+            for (; pos < from; pos++) out.add(p.x(pos), p.z(pos));
+            pos += n;
+            for (int i = 0; i < m; i++, o += 2) out.add(outs[o], outs[o+1]);
+        }
+        for (; pos < p.size(); pos++) out.add(p.x(pos), p.z(pos));
+        p.setAll(out);
+    }
+
+    private static List<Point2D> view(Polyline p) {
+        return new AbstractList<>() {
+            @Override public Point2D get(int i) { return new Point2D.Double(p.x(i), p.z(i)); }
+            @Override public int size() { return p.size(); }
+        };
+    }
+}
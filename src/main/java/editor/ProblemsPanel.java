@@ -0,0 +1,47 @@
+package editor;
+
+import editor.check.HighwaysValidator.Problem;
+import editor.check.HighwaysValidator.Severity;
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** Validation findings under the map; double-click or Enter on a row jumps to the station or line. */
+public class ProblemsPanel extends JPanel {
+    private static final Color ERROR_COLOR = new Color(190, 30, 30), WARNING_COLOR = new Color(170, 110, 0);
+
+    private final DefaultListModel<Problem> model = new DefaultListModel<>();
+    private final JList<Problem> list = new JList<>(model);
+    private final TitledBorder border = new TitledBorder("Problems");
+
+    public ProblemsPanel(Consumer<Problem> open) {
+        super(new BorderLayout());
+        setBorder(border);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            public Component getListCellRendererComponent(JList<?> l, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(l, value, index, isSelected, cellHasFocus);
+                if (!isSelected && value instanceof Problem p) setForeground(p.severity() == Severity.ERROR ? ERROR_COLOR : WARNING_COLOR);
+                return this;
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) { if (e.getClickCount() == 2 && list.getSelectedValue() != null) open.accept(list.getSelectedValue()); }
+        });
+        list.getInputMap().put(KeyStroke.getKeyStroke("ENTER"), "open");
+        list.getActionMap().put("open", new AbstractAction() {
+            public void actionPerformed(java.awt.event.ActionEvent e) { if (list.getSelectedValue() != null) open.accept(list.getSelectedValue()); }
+        });
+        add(new JScrollPane(list), BorderLayout.CENTER);
+    }
+
+    public void setProblems(List<Problem> problems) {
+        long errors = problems.stream().filter(p -> p.severity() == Severity.ERROR).count();
+        border.setTitle("Problems (" + errors + " errors, " + (problems.size() - errors) + " warnings)");
+        model.clear(); model.addAll(problems);
+        repaint();
+    }
+}
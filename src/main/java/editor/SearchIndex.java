@@ -0,0 +1,64 @@
+package editor;
+
+import java.util.*;
+
+/**
+ * Immutable substring search over a fixed list of items, keyed by a pre-normalized search string per item.
+ * Queries of three or more characters start from the shortest trigram posting list instead of scanning
+ * every key. A query that extends an earlier one can be refined from that query's hits only.
+ */
+public class SearchIndex<T> {
+    private final List<T> items;
+    private final String[] keys;
+    private final Map<Long, int[]> postings = new HashMap<>();
+
+    /** {@code keys[i]} is the text item {@code i} is found by; it is normalized here. */
+    public SearchIndex(List<T> items, String[] keys) {
+        this.items = items;
+        this.keys = new String[keys.length];
+        Map<Long, IntList> build = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            String k = normalize(keys[i]); this.keys[i] = k;
+            for (int j = 0; j + 3 <= k.length(); j++) {
+                IntList l = build.computeIfAbsent(trigram(k, j), t -> new IntList());
+                if (l.size == 0 || l.data[l.size - 1] != i) l.add(i);
+            }
+        }
+        build.forEach((t, l) -> postings.put(t, Arrays.copyOf(l.data, l.size)));
+    }
+
+    public static String normalize(String s) { return s == null ? "" : s.toLowerCase(Locale.ROOT); }
+
+    public int size() { return items.size(); }
+    public T get(int i) { return items.get(i); }
+
+    /**
+     * Indices of items whose key contains the query, in item order. If {@code within} is given (the hits of
+     * a query that this one contains), only those items are checked.
+     */
+    public int[] search(String query, int[] within) {
+        String q = normalize(query);
+        if (q.isEmpty()) { int[] all = new int[items.size()]; for (int i = 0; i < all.length; i++) all[i] = i; return all; }
+        int[] candidates = within;
+        if (q.length() >= 3) {
+            int[] best = null;
+            for (int j = 0; j + 3 <= q.length(); j++) {
+                int[] p = postings.get(trigram(q, j));
+                if (p == null) return new int[0];
+                if (best == null || p.length < best.length) best = p;
+            }
+            if (candidates == null || best.length < candidates.length) candidates = best;
+        }
+        IntList out = new IntList();
+        if (candidates == null) { for (int i = 0; i < keys.length; i++) if (keys[i].contains(q)) out.add(i); }
+        else for (int i : candidates) if (keys[i].contains(q)) out.add(i);
+        return Arrays.copyOf(out.data, out.size);
+    }
+
+    private static long trigram(String s, int i) { return ((long)s.charAt(i) << 32) | ((long)s.charAt(i+1) << 16) | s.charAt(i+2); }
+
+    private static final class IntList {
+        int[] data = new int[4]; int size;
+        void add(int v) { if (size == data.length) data = Arrays.copyOf(data, size * 2); data[size++] = v; }
+    }
+}
@@ -0,0 +1,63 @@
+package editor;
+
+import java.util.Arrays;
+
+/**
+ * Coordinates a dragged corner can line up with, kept as one sorted array per axis so the closest one within
+ * a tolerance is a binary search away. Points are collected with {@link #add} and sorted once by {@link #build}.
+ * An optional grid adds every multiple of its step on both axes without storing them.
+ */
+public class SnapIndex {
+    private double[] xs = new double[64], zs = new double[64];
+    private int size, nx, nz;
+    private double grid;
+
+    public void clear() { size = nx = nz = 0; }
+
+    public void add(double x, double z) {
+        if (!Double.isFinite(x) || !Double.isFinite(z)) return;
+        if (size == xs.length) { xs = Arrays.copyOf(xs, size * 2); zs = Arrays.copyOf(zs, size * 2); }
+        xs[size] = x; zs[size] = z; size++;
+    }
+
+    /** Sorts and de-duplicates what was added since the last {@link #clear}. */
+    public void build() {
+        nx = sortUnique(xs, size); nz = sortUnique(zs, size);
+    }
+
+    /** Grid step in blocks; 0 turns the grid off. */
+    public void setGrid(double step) { grid = step > 0 ? step : 0; }
+
+    /** The indexed or grid X closest to {@code x} and at most {@code tol} away, or NaN if there is none. */
+    public double snapX(double x, double tol) { return snap(xs, nx, x, tol); }
+
+    public double snapZ(double z, double tol) { return snap(zs, nz, z, tol); }
+
+    private double snap(double[] a, int n, double v, double tol) {
+        int i = Arrays.binarySearch(a, 0, n, v);
+        if (i >= 0) return v;
+        i = -i - 1;
+        double best = Double.NaN, bestD = tol;
+        if (i < n && a[i] - v <= bestD) { best = a[i]; bestD = a[i] - v; }
+        if (i > 0 && v - a[i-1] <= bestD) { best = a[i-1]; bestD = v - a[i-1]; }
+        if (grid > 0) {
+            double g = Math.round(v / grid) * grid;
+            if (Math.abs(g - v) < bestD) best = g;
+        }
+        return best;
+    }
+
+    /** Nearer of two snap results for {@code v}, either of which may be NaN. */
+    public static double nearer(double v, double a, double b) {
+        if (Double.isNaN(a)) return b;
+        if (Double.isNaN(b)) return a;
+        return Math.abs(a - v) <= Math.abs(b - v) ? a : b;
+    }
+
+    private static int sortUnique(double[] a, int n) {
+        Arrays.sort(a, 0, n);
+        int m = 0;
+        for (int i = 0; i < n; i++) if (m == 0 || a[i] != a[m-1]) a[m++] = a[i];
+        return m;
+    }
+}
@@ -0,0 +1,122 @@
+package editor;
+
+import javax.swing.AbstractListModel;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * List model that keeps its items sorted and optionally filtered, and reports single-item edits as
+ * precise interval events instead of rebuilding. The comparator must be a total order (break ties on a
+ * unique key) so that an item can be found again by binary search.
+ */
+public class SortedListModel<T> extends AbstractListModel<T> {
+    private final List<T> all = new ArrayList<>();
+    private List<T> view = all;
+    private Comparator<? super T> comparator;
+    private Predicate<? super T> filter;
+
+    public SortedListModel(Comparator<? super T> comparator) { this.comparator = comparator; }
+
+    @Override public int getSize() { return view.size(); }
+    @Override public T getElementAt(int i) { return view.get(i); }
+
+    public void setAll(Collection<? extends T> items) {
+        int old = view.size();
+        all.clear(); all.addAll(items); all.sort(comparator);
+        rebuildView(old);
+    }
+
+    /** Re-sorts everything; reported as a removal and re-insertion of all rows, so list selections are cleared rather than left on other items. */
+    public void setComparator(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        all.sort(comparator);
+        if (view != all) view.sort(comparator);
+        if (!view.isEmpty()) { fireIntervalRemoved(this, 0, view.size() - 1); fireIntervalAdded(this, 0, view.size() - 1); }
+    }
+
+    /** Shows only items accepted by the filter; {@code null} shows everything. */
+    public void setFilter(Predicate<? super T> filter) {
+        int old = view.size();
+        this.filter = filter;
+        rebuildView(old);
+    }
+
+    public boolean isFiltered() { return filter != null; }
+
+    /** Inserts an item at its sorted position. While filtered, a newly added item is always shown. */
+    public void add(T item) {
+        int a = insertionPoint(all, item);
+        all.add(a, item);
+        if (view == all) { fireIntervalAdded(this, a, a); return; }
+        int i = insertionPoint(view, item);
+        view.add(i, item);
+        Predicate<? super T> f = filter;
+        filter = x -> x.equals(item) || f.test(x);
+        fireIntervalAdded(this, i, i);
+    }
+
+    public void remove(T item) {
+        int a = indexOf(all, item);
+        if (a < 0) return;
+        if (view == all) { all.remove(a); fireIntervalRemoved(this, a, a); return; }
+        all.remove(a);
+        int v = indexOf(view, item);
+        if (v >= 0) { view.remove(v); fireIntervalRemoved(this, v, v); }
+    }
+
+    /**
+     * Re-sorts one item after its sort key changed, e.g. a station rename. {@code before} is a copy of the item
+     * with its old key, by which it is found again; an item still in place is just repainted.
+     */
+    public void changed(T item, T before) {
+        int a = indexOf(all, item, before);
+        if (a < 0) return;
+        if ((a == 0 || comparator.compare(all.get(a - 1), item) <= 0) && (a == all.size() - 1 || comparator.compare(item, all.get(a + 1)) <= 0)) {
+            int v = view == all ? a : indexOf(view, item, before);
+            if (v >= 0) fireContentsChanged(this, v, v);
+            return;
+        }
+        all.remove(a);
+        if (view == all) fireIntervalRemoved(this, a, a);
+        else { int v = indexOf(view, item, before); if (v >= 0) { view.remove(v); fireIntervalRemoved(this, v, v); } }
+        all.add(insertionPoint(all, item), item);
+        if (view == all) { int i = indexOf(all, item); fireIntervalAdded(this, i, i); }
+        else if (filter.test(item)) { int i = insertionPoint(view, item); view.add(i, item); fireIntervalAdded(this, i, i); }
+    }
+
+    private void rebuildView(int oldSize) {
+        if (filter == null) view = all;
+        else { view = new ArrayList<>(); for (T t : all) if (filter.test(t)) view.add(t); }
+        if (oldSize > 0) fireIntervalRemoved(this, 0, oldSize - 1);
+        if (!view.isEmpty()) fireIntervalAdded(this, 0, view.size() - 1);
+    }
+
+    private int insertionPoint(List<T> list, T item) {
+        int i = Collections.binarySearch(list, item, comparator);
+        return i < 0 ? -i - 1 : i;
+    }
+
+    private int indexOf(List<T> list, T item) {
+        int i = Collections.binarySearch(list, item, comparator);
+        return i >= 0 && list.get(i).equals(item) ? i : linearIndexOf(list, item);
+    }
+
+    /** Binary search by the old key of an item whose own key may have changed; meeting the item itself ends it. */
+    private int indexOf(List<T> list, T item, T before) {
+        int lo = 0, hi = list.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            T m = list.get(mid);
+            if (m.equals(item)) return mid;
+            int c = comparator.compare(m, before);
+            if (c == 0) break;
+            if (c < 0) lo = mid + 1; else hi = mid - 1;
+        }
+        return linearIndexOf(list, item);
+    }
+
+    private static <T> int linearIndexOf(List<T> list, T item) {
+        for (int i = 0; i < list.size(); i++) if (list.get(i).equals(item)) return i;
+        return -1;
+    }
+}
@@ -0,0 +1,147 @@
+package editor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * World-space quadtree over axis-aligned bounding boxes.
+ * Each item lives in the deepest node that fully contains its box, so inserts, removals and small
+ * window queries cost O(log n). The root grows outwards on demand, so there is no fixed world size.
+ */
+public class SpatialIndex<T> {
+    private static final int NODE_CAPACITY = 8;
+    private static final double MIN_HALF = 1.0;
+
+    private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+    private Node<T> root = new Node<>(0, 0, 1 << 15);
+
+    public void insert(T item, double minX, double minZ, double maxX, double maxZ) {
+        remove(item);
+        if (!Double.isFinite(minX + minZ + maxX + maxZ)) return;
+        Entry<T> e = new Entry<>(item, Math.min(minX, maxX), Math.min(minZ, maxZ), Math.max(minX, maxX), Math.max(minZ, maxZ));
+        while (!root.contains(e)) grow(e);
+        insert(root, e);
+        entries.put(item, e);
+    }
+
+    public void insertPoint(T item, double x, double z) { insert(item, x, z, x, z); }
+
+    public boolean remove(T item) {
+        Entry<T> e = entries.remove(item);
+        if (e == null) return false;
+        e.node.detach(e);
+        return true;
+    }
+
+    public boolean contains(T item) { return entries.containsKey(item); }
+
+    /** The box an item was inserted with, as {minX, minZ, maxX, maxZ}, or null if it is not indexed. */
+    public double[] bounds(T item) {
+        Entry<T> e = entries.get(item);
+        return e == null ? null : new double[]{e.minX, e.minZ, e.maxX, e.maxZ};
+    }
+    public int size() { return entries.size(); }
+    public void clear() { entries.clear(); root = new Node<>(0, 0, 1 << 15); }
+
+    /** Visits every item whose box intersects the given world rectangle. */
+    public void query(double minX, double minZ, double maxX, double maxZ, Consumer<? super T> visitor) {
+        query(root, minX, minZ, maxX, maxZ, visitor);
+    }
+
+    public List<T> query(double minX, double minZ, double maxX, double maxZ) {
+        List<T> out = new ArrayList<>();
+        query(minX, minZ, maxX, maxZ, out::add);
+        return out;
+    }
+
+    private void query(Node<T> n, double minX, double minZ, double maxX, double maxZ, Consumer<? super T> visitor) {
+        if (n.cx + n.half < minX || n.cx - n.half > maxX || n.cz + n.half < minZ || n.cz - n.half > maxZ) return;
+        for (int i = 0; i < n.size; i++) {
+            Entry<T> e = n.items[i];
+            if (e.maxX >= minX && e.minX <= maxX && e.maxZ >= minZ && e.minZ <= maxZ) visitor.accept(e.item);
+        }
+        if (n.kids != null) for (Node<T> k : n.kids) query(k, minX, minZ, maxX, maxZ, visitor);
+    }
+
+    private void insert(Node<T> n, Entry<T> e) {
+        while (true) {
+            if (n.kids != null) {
+                Node<T> k = n.childFor(e);
+                if (k != null) { n = k; continue; }
+            }
+            n.attach(e);
+            if (n.kids == null && n.size > NODE_CAPACITY && n.half > MIN_HALF) split(n);
+            return;
+        }
+    }
+
+    private void split(Node<T> n) {
+        n.kids = quadrants(n.cx, n.cz, n.half / 2);
+        Entry<T>[] old = n.items; int count = n.size;
+        n.items = entries(NODE_CAPACITY); n.size = 0;
+        for (int i = 0; i < count; i++) {
+            Node<T> k = n.childFor(old[i]);
+            (k != null ? k : n).attach(old[i]);
+        }
+    }
+
+    /** Doubles the root towards the given entry, keeping the old root as one of the new quadrants. */
+    private void grow(Entry<T> e) {
+        Node<T> old = root;
+        double sx = (e.minX + e.maxX) / 2 < old.cx ? -1 : 1, sz = (e.minZ + e.maxZ) / 2 < old.cz ? -1 : 1;
+        Node<T> r = new Node<>(old.cx + sx * old.half, old.cz + sz * old.half, old.half * 2);
+        r.kids = quadrants(r.cx, r.cz, old.half);
+        r.kids[(sx < 0 ? 1 : 0) + (sz < 0 ? 2 : 0)] = old;
+        root = r;
+    }
+
+    /** The four children of a node centred on ({@code cx}, {@code cz}), each of half-size {@code h}. */
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[] quadrants(double cx, double cz, double h) {
+        Node<T>[] kids = (Node<T>[]) new Node<?>[4];
+        kids[0] = new Node<>(cx - h, cz - h, h); kids[1] = new Node<>(cx + h, cz - h, h);
+        kids[2] = new Node<>(cx - h, cz + h, h); kids[3] = new Node<>(cx + h, cz + h, h);
+        return kids;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T>[] entries(int n) { return (Entry<T>[]) new Entry<?>[n]; }
+
+    private static final class Entry<T> {
+        final T item; final double minX, minZ, maxX, maxZ;
+        Node<T> node; int slot;
+        Entry(T item, double minX, double minZ, double maxX, double maxZ) { this.item = item; this.minX = minX; this.minZ = minZ; this.maxX = maxX; this.maxZ = maxZ; }
+    }
+
+    private static final class Node<T> {
+        final double cx, cz, half;
+        Entry<T>[] items = entries(NODE_CAPACITY);
+        int size;
+        Node<T>[] kids;
+
+        Node(double cx, double cz, double half) { this.cx = cx; this.cz = cz; this.half = half; }
+
+        boolean contains(Entry<T> e) { return e.minX >= cx - half && e.maxX <= cx + half && e.minZ >= cz - half && e.maxZ <= cz + half; }
+
+        Node<T> childFor(Entry<T> e) {
+            boolean west = e.maxX < cx, east = e.minX >= cx, north = e.maxZ < cz, south = e.minZ >= cz;
+            if (!(west || east) || !(north || south)) return null;
+            return kids[(east ? 1 : 0) + (south ? 2 : 0)];
+        }
+
+        void attach(Entry<T> e) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            e.node = this; e.slot = size; items[size++] = e;
+        }
+
+        /** Swap-remove so that detaching is O(1) even for crowded nodes. */
+        void detach(Entry<T> e) {
+            Entry<T> last = items[--size];
+            items[e.slot] = last; last.slot = e.slot; items[size] = null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package editor;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Offscreen cache for the static layer of the map, split into fixed-size tiles keyed by zoom and
+ * tile coordinate. Tile (tx, tz) covers global pixels [tx*SIZE, (tx+1)*SIZE) where a world point
+ * sits at global pixel {@code x * zoom}, so panning only shifts where existing tiles are blitted.
+ */
+public class TileCache {
+    public static final int SIZE = 256;
+    private static final int MAX_TILES = 160;
+
+    /** Paints the static content into a tile; the renderer's view is already set up for the tile. */
+    public interface Layer { void paint(Graphics2D g2, MapRenderer r, int width, int height); }
+
+    private record Key(double zoom, int tx, int tz) {}
+
+    private final Map<Key, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> e) { return size() > MAX_TILES; }
+    };
+
+    private int tilesDrawn, tilesRendered;
+
+    /** Tiles blitted and tiles rendered by {@link #paint} since the last reset. */
+    public void resetStats() { tilesDrawn = tilesRendered = 0; }
+    public int tilesDrawn() { return tilesDrawn; }
+    public int tilesRendered() { return tilesRendered; }
+
+    /**
+     * Blits the tiles covering a {@code width x height} viewport whose top-left corner is at global
+     * pixel ({@code originX}, {@code originZ}), rendering any that are missing.
+     */
+    public void paint(Graphics2D g2, MapRenderer r, Layer layer, double zoom, long originX, long originZ, int width, int height) {
+        int tx0 = (int)Math.floorDiv(originX, SIZE), tz0 = (int)Math.floorDiv(originZ, SIZE);
+        int tx1 = (int)Math.floorDiv(originX + width, SIZE), tz1 = (int)Math.floorDiv(originZ + height, SIZE);
+        for (int tz = tz0; tz <= tz1; tz++) for (int tx = tx0; tx <= tx1; tx++) {
+            Key k = new Key(zoom, tx, tz);
+            BufferedImage img = tiles.get(k);
+            if (img == null) { img = render(r, layer, k); tiles.put(k, img); tilesRendered++; }
+            tilesDrawn++;
+            g2.drawImage(img, (int)((long)tx * SIZE - originX), (int)((long)tz * SIZE - originZ), null);
+        }
+    }
+
+    private BufferedImage render(MapRenderer r, Layer layer, Key k) {
+        BufferedImage img = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        r.setView(k.zoom, k.tx * (double)SIZE / k.zoom, k.tz * (double)SIZE / k.zoom, 0, 0);
+        layer.paint(g, r, SIZE, SIZE);
+        g.dispose();
+        return img;
+    }
+
+    /**
+     * Drops every cached tile (at any zoom) that overlaps the world box grown by {@code marginPx} pixels
+     * plus the zoom-dependent half width of a line stroke.
+     */
+    public void invalidate(double minX, double minZ, double maxX, double maxZ, double marginPx) {
+        for (Iterator<Key> it = tiles.keySet().iterator(); it.hasNext();) {
+            Key k = it.next();
+            double m = marginPx + 4 * k.zoom;
+            double x0 = (k.tx * (double)SIZE - m) / k.zoom, z0 = (k.tz * (double)SIZE - m) / k.zoom;
+            double x1 = ((k.tx + 1) * (double)SIZE + m) / k.zoom, z1 = ((k.tz + 1) * (double)SIZE + m) / k.zoom;
+            if (maxX >= x0 && minX <= x1 && maxZ >= z0 && minZ <= z1) it.remove();
+        }
+    }
+
+    public void invalidate(double[] bounds, double marginPx) { if (bounds != null) invalidate(bounds[0], bounds[1], bounds[2], bounds[3], marginPx); }
+
+    public void clear() { tiles.clear(); }
+}
@@ -0,0 +1,96 @@
+package editor;
+
+import editor.models.LineData;
+import editor.models.Station;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Undo and redo stacks bounded by the memory their edits hold rather than by a count: each edit estimates
+ * its own size, and once the total passes the limit the oldest undoable edits are forgotten. The newest edit
+ * is always kept. Edits apply themselves; the history only orders them.
+ */
+public class UndoHistory {
+    /** One reversible change; {@link #bytes} is an estimate of what it keeps alive. */
+    public interface Edit {
+        String name();
+        long bytes();
+        void undo();
+        void redo();
+    }
+
+    /** An edit made of two actions, for changes simple enough not to need a class of their own. */
+    public static Edit of(String name, long bytes, Runnable undo, Runnable redo) {
+        return new Edit() {
+            public String name() { return name; }
+            public long bytes() { return bytes; }
+            public void undo() { undo.run(); }
+            public void redo() { redo.run(); }
+        };
+    }
+
+    private final Deque<Edit> undo = new ArrayDeque<>(), redo = new ArrayDeque<>();
+    private long limit, used;
+
+    public UndoHistory(long limitBytes) { this.limit = limitBytes; }
+
+    /** Records an edit that was just made; anything that could be redone is dropped. */
+    public void add(Edit e) {
+        for (Edit r : redo) used -= r.bytes();
+        redo.clear();
+        undo.addLast(e); used += e.bytes();
+        trim();
+    }
+
+    public boolean canUndo() { return !undo.isEmpty(); }
+    public boolean canRedo() { return !redo.isEmpty(); }
+    public String undoName() { return undo.isEmpty() ? null : undo.peekLast().name(); }
+    public String redoName() { return redo.isEmpty() ? null : redo.peekLast().name(); }
+
+    public Edit undo() {
+        Edit e = undo.pollLast();
+        if (e != null) { e.undo(); redo.addLast(e); }
+        return e;
+    }
+
+    public Edit redo() {
+        Edit e = redo.pollLast();
+        if (e != null) { e.redo(); undo.addLast(e); }
+        return e;
+    }
+
+    /** Forgets edits that no longer apply, e.g. to a working copy that was thrown away. */
+    public void removeIf(Predicate<Edit> stale) {
+        for (Deque<Edit> d : List.of(undo, redo)) d.removeIf(e -> { if (!stale.test(e)) return false; used -= e.bytes(); return true; });
+    }
+
+    public void clear() { undo.clear(); redo.clear(); used = 0; }
+
+    /** Estimated bytes held by both stacks. */
+    public long bytes() { return used; }
+
+    public long limit() { return limit; }
+
+    public void setLimit(long limitBytes) { limit = limitBytes; trim(); }
+
+    /** Rough heap size of a station, for edits that keep a copy or the removed station itself. */
+    public static long estimate(Station s) {
+        long n = 96 + 2L * ((s.name == null ? 0 : s.name.length()) + (s.notes == null ? 0 : s.notes.length()));
+        if (s.lines != null) n += 48 + 24L * s.lines.size();
+        return n;
+    }
+
+    /** Rough heap size of a line, for edits that keep a removed line alive. */
+    public static long estimate(LineData ld) {
+        long n = 128;
+        if (ld.branches != null) for (LineData.Branch br : ld.branches.values()) n += 64 + (br.vertices == null ? 0 : 16L * br.vertices.size()) + (br.stations == null ? 0 : 20L * br.stations.size());
+        return n;
+    }
+
+    private void trim() {
+        while (used > limit && !redo.isEmpty()) used -= redo.pollFirst().bytes();
+        while (used > limit && undo.size() > 1) used -= undo.pollFirst().bytes();
+    }
+}
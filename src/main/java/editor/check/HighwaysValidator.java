@@ -0,0 +1,104 @@
+package editor.check;
+
+import editor.models.HighwaysData;
+import editor.models.LineData;
+import editor.models.Station;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Consistency checks over a whole map: duplicate or dangling station ids, connections to lines or branches
+ * that don't exist or don't list the station back, stations off their branch's path, elevators without
+ * levels, bad colors and degenerate geometry. Each station and each line is checked on its own, so a full
+ * pass forks across both on the common fork/join pool, and {@link IncrementalValidator} can re-check single
+ * entities after an edit.
+ */
+public final class HighwaysValidator {
+    public enum Severity { ERROR, WARNING }
+
+    /** One finding, tied to a station id and/or a {@code "category: line"} key so callers can navigate to it. */
+    public record Problem(Severity severity, Integer stationId, String lineKey, String message) {
+        @Override public String toString() {
+            String where = stationId != null ? "station " + stationId : "";
+            if (lineKey != null) where += (where.isEmpty() ? "" : ", ") + "line " + lineKey;
+            return severity + " [" + where + "] " + message;
+        }
+    }
+
+    private static final Pattern COLOR = Pattern.compile("[0-9a-fA-F]{6}");
+
+    private HighwaysValidator() {}
+
+    public static List<Problem> validate(HighwaysData data) {
+        List<Station> stations = data.stations == null ? List.of() : data.stations;
+        Map<String, Map<String, LineData>> lines = data.lines == null ? Map.of() : data.lines;
+        Map<Integer, Integer> idCounts = new HashMap<>();
+        for (Station s : stations) idCounts.merge(s.id, 1, Integer::sum);
+        Map<Integer, Station> byId = new HashMap<>();
+        for (Station s : stations) byId.putIfAbsent(s.id, s);
+
+        Stream<Problem> st = stations.parallelStream().flatMap(s -> checkStation(s, idCounts.get(s.id) > 1, lines).stream());
+        Stream<Problem> ln = lines.entrySet().stream()
+            .flatMap(c -> c.getValue().entrySet().stream().map(e -> Map.entry(c.getKey() + ": " + e.getKey(), e.getValue())))
+            .toList().parallelStream()
+            .flatMap(e -> checkLine(e.getKey(), e.getValue(), byId::get).stream());
+        return Stream.concat(st, ln).toList();
+    }
+
+    /** Problems with one station and the connections it declares. */
+    public static List<Problem> checkStation(Station s, boolean duplicateId, Map<String, Map<String, LineData>> lines) {
+        List<Problem> out = new ArrayList<>();
+        if (duplicateId) out.add(new Problem(Severity.ERROR, s.id, null, "Duplicate id " + s.id));
+        if (!Double.isFinite(s.x) || !Double.isFinite(s.z)) out.add(new Problem(Severity.ERROR, s.id, null, "Coordinates are not finite"));
+        if (s.name == null || s.name.isBlank()) out.add(new Problem(Severity.WARNING, s.id, null, "Station has no name"));
+        if (s.type != null && s.type.startsWith("elev") && (s.y1 == null || s.y2 == null)) out.add(new Problem(Severity.ERROR, s.id, null, "Elevator is missing y1/y2"));
+        if (s.lines != null) for (int i = 0; i < s.lines.size(); i++) {
+            String key = s.lines.ref(i).key();
+            LineData ld = lines.getOrDefault(s.lines.category(i), Map.of()).get(s.lines.line(i));
+            if (ld == null) { out.add(new Problem(Severity.WARNING, s.id, key, "Connected to a line that does not exist")); continue; }
+            String brName = s.lines.branch(i) != null && !s.lines.branch(i).isEmpty() ? s.lines.branch(i) : "Main line";
+            LineData.Branch br = ld.branches == null ? null : ld.branches.get(brName);
+            if (br == null) out.add(new Problem(Severity.WARNING, s.id, key, "Connected to missing branch \"" + brName + "\""));
+            else {
+                if (br.stations == null || br.stations.stream().noneMatch(o -> o instanceof Number n && n.doubleValue() == s.id))
+                    out.add(new Problem(Severity.WARNING, s.id, key, "Not listed on branch \"" + brName + "\""));
+                if (br.vertices == null || br.vertices.indexOf(s.x, s.z) < 0)
+                    out.add(new Problem(Severity.WARNING, s.id, key, "Not on a vertex of branch \"" + brName + "\""));
+            }
+        }
+        return out;
+    }
+
+    /** Problems with one line: its color, its branches' geometry and the stations they list. */
+    public static List<Problem> checkLine(String key, LineData ld, IntFunction<Station> stations) {
+        List<Problem> out = new ArrayList<>();
+        if (ld == null) { out.add(new Problem(Severity.ERROR, null, key, "Line has no data")); return out; }
+        if (ld.color == null || !COLOR.matcher(ld.color).matches()) out.add(new Problem(Severity.ERROR, null, key, "Invalid color \"" + ld.color + "\""));
+        if (ld.branches == null || ld.branches.isEmpty()) { out.add(new Problem(Severity.WARNING, null, key, "Line has no branches")); return out; }
+        ld.branches.forEach((name, br) -> {
+            if (br == null) { out.add(new Problem(Severity.ERROR, null, key, "Branch \"" + name + "\" is null")); return; }
+            int n = br.vertices == null ? 0 : br.vertices.size();
+            if (n < 2) out.add(new Problem(Severity.WARNING, null, key, "Branch \"" + name + "\" has " + n + " vertices"));
+            for (int i = 0; i < n; i++) if (!Double.isFinite(br.vertices.x(i)) || !Double.isFinite(br.vertices.z(i))) {
+                out.add(new Problem(Severity.ERROR, null, key, "Branch \"" + name + "\" vertex " + i + " is not finite")); break;
+            }
+            if (br.stations != null) for (Object o : br.stations) {
+                if (!(o instanceof Number num) || num.doubleValue() != num.intValue()) out.add(new Problem(Severity.ERROR, null, key, "Branch \"" + name + "\" lists non-integer station " + o));
+                else {
+                    Station s = stations.apply(num.intValue());
+                    if (s == null) out.add(new Problem(Severity.ERROR, null, key, "Branch \"" + name + "\" lists unknown station " + num.intValue()));
+                    else if (!claims(s, key)) out.add(new Problem(Severity.WARNING, s.id, key, "Branch \"" + name + "\" lists a station not connected to the line"));
+                }
+            }
+        });
+        return out;
+    }
+
+    /** Whether the station declares the line at all; a junction may sit on several of its branches. */
+    private static boolean claims(Station s, String key) {
+        int sep = key.indexOf(": ");
+        return s.lines != null && s.lines.contains(key.substring(0, sep), key.substring(sep + 2));
+    }
+}
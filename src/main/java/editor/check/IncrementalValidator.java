@@ -0,0 +1,105 @@
+package editor.check;
+
+import editor.check.HighwaysValidator.Problem;
+import editor.models.HighwaysData;
+import editor.models.HighwaysIndex;
+import editor.models.LineData;
+import editor.models.Station;
+import java.util.*;
+
+/**
+ * Keeps the validator's findings per station and per line, so an edit only re-checks what it can affect:
+ * a station edit re-checks the station and the lines that list it, a line edit re-checks the line and the
+ * stations that connect to it. The initial full pass forks across stations and lines like
+ * {@link HighwaysValidator#validate}.
+ */
+public class IncrementalValidator {
+    private static final Comparator<Problem> ORDER = Comparator.comparing(Problem::severity)
+        .thenComparing(p -> p.lineKey() == null ? "" : p.lineKey())
+        .thenComparing(p -> p.stationId() == null ? -1 : p.stationId());
+
+    private final HighwaysData data;
+    private final HighwaysIndex index;
+    private final Map<Integer, Integer> idCounts = new HashMap<>();
+    private final Map<Station, List<Problem>> stationProblems = new IdentityHashMap<>();
+    private final Map<String, List<Problem>> lineProblems = new HashMap<>();
+
+    public IncrementalValidator(HighwaysData data, HighwaysIndex index) {
+        this.data = data; this.index = index;
+        if (data.stations != null) for (Station s : data.stations) idCounts.merge(s.id, 1, Integer::sum);
+        List<Station> stations = data.stations == null ? List.of() : data.stations;
+        List<List<Problem>> st = stations.parallelStream().map(this::checkStation).toList();
+        for (int i = 0; i < st.size(); i++) put(stationProblems, stations.get(i), st.get(i));
+        List<String> keys = new ArrayList<>();
+        if (data.lines != null) data.lines.forEach((cat, m) -> m.keySet().forEach(ln -> keys.add(cat + ": " + ln)));
+        List<List<Problem>> ln = keys.parallelStream().map(this::checkLine).toList();
+        for (int i = 0; i < ln.size(); i++) put(lineProblems, keys.get(i), ln.get(i));
+    }
+
+    /** All current findings, errors first. */
+    public List<Problem> problems() {
+        List<Problem> out = new ArrayList<>();
+        stationProblems.values().forEach(out::addAll);
+        lineProblems.values().forEach(out::addAll);
+        out.sort(ORDER);
+        return out;
+    }
+
+    /** After a station's fields or connections were edited. */
+    public void stationChanged(Station s) {
+        put(stationProblems, s, checkStation(s));
+        recheckLinesListing(s.id);
+    }
+
+    public void stationAdded(Station s) {
+        int n = idCounts.merge(s.id, 1, Integer::sum);
+        if (n == 2) recheckStationsWithId(s.id);
+        else put(stationProblems, s, checkStation(s));
+        recheckLinesListing(s.id);
+    }
+
+    public void stationRemoved(Station s) {
+        stationProblems.remove(s);
+        Integer n = idCounts.computeIfPresent(s.id, (k, c) -> c > 1 ? c - 1 : null);
+        if (n != null && n == 1) recheckStationsWithId(s.id);
+        recheckLinesListing(s.id);
+    }
+
+    /** After a line was added or its data or geometry edited. */
+    public void lineChanged(String category, String line) {
+        String key = category + ": " + line;
+        put(lineProblems, key, checkLine(key));
+        for (Station s : index.stationsOn(category, line)) put(stationProblems, s, checkStation(s));
+    }
+
+    public void lineRemoved(String category, String line) {
+        lineProblems.remove(category + ": " + line);
+        for (Station s : index.stationsOn(category, line)) put(stationProblems, s, checkStation(s));
+    }
+
+    private List<Problem> checkStation(Station s) {
+        return HighwaysValidator.checkStation(s, idCounts.getOrDefault(s.id, 0) > 1, data.lines == null ? Map.of() : data.lines);
+    }
+
+    private List<Problem> checkLine(String key) {
+        int sep = key.indexOf(": ");
+        Map<String, LineData> cat = data.lines == null ? null : data.lines.get(key.substring(0, sep));
+        LineData ld = cat == null ? null : cat.get(key.substring(sep + 2));
+        return ld == null ? List.of() : HighwaysValidator.checkLine(key, ld, index::station);
+    }
+
+    private void recheckLinesListing(int id) {
+        for (HighwaysIndex.Membership m : index.branchesListing(id)) {
+            String key = m.category() + ": " + m.line();
+            put(lineProblems, key, checkLine(key));
+        }
+    }
+
+    private void recheckStationsWithId(int id) {
+        for (Station o : data.stations) if (o.id == id) put(stationProblems, o, checkStation(o));
+    }
+
+    private static <K> void put(Map<K, List<Problem>> map, K key, List<Problem> problems) {
+        if (problems.isEmpty()) map.remove(key); else map.put(key, problems);
+    }
+}
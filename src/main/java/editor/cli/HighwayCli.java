@@ -0,0 +1,222 @@
+package editor.cli;
+
+import editor.check.HighwaysValidator;
+import editor.export.TileExporter;
+import editor.io.HighwaysReader;
+import editor.io.HighwaysWriter;
+import editor.merge.HighwaysDiff;
+import editor.merge.HighwaysMerge;
+import editor.models.HighwaysData;
+import editor.models.LineData;
+import editor.models.Polyline;
+import editor.models.Station;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Headless batch mode: stream-loads a highways.json, applies the requested operations in a fixed order
+ * (merge, diff, round, renumber, sort, validate, tiles) and writes the result. Apart from {@code --tiles}, which renders
+ * with the editor's drawing code in headless mode, only the model and io packages are used, so no AWT class is ever
+ * loaded. Per-line work runs in parallel, and each stage's time is reported on stderr.
+ */
+public final class HighwayCli {
+    private static final String USAGE = """
+        Usage: HighwayCli <input.json|-> [options]
+          -o, --output <file|->   write the result (default: no output; "-" is stdout)
+          --validate              report problems; exit code 1 if any is an error
+          --merge <base> <theirs> three-way merge: the input is "ours", both were edited from <base>;
+                                  conflicts keep ours and are reported, with exit code 1
+          --diff <other>          list what differs from the input to <other>, by station id and line
+          --round <digits>        round station, area and vertex coordinates (the editor uses 2)
+          --renumber              renumber stations 1..n in file order and update branch references
+          --sort                  sort stations by id and categories, lines and branches by name
+          --tiles <dir>           export a z/x/y pyramid of 256px PNG tiles; only tiles whose content changed
+                                  since the last export into <dir> are rendered again
+          --max-zoom <n>          deepest tile level (default: where one block is one pixel)
+          --minify | --pretty     output formatting (default: pretty)
+          -q, --quiet             don't report timings
+        """;
+
+    private final PrintStream log;
+    private final boolean quiet;
+
+    private HighwayCli(PrintStream log, boolean quiet) { this.log = log; this.quiet = quiet; }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try { System.exit(run(args)); }
+        catch (IllegalArgumentException e) { System.err.println(e.getMessage()); System.err.print(USAGE); System.exit(2); }
+        catch (IOException | RuntimeException e) { System.err.println("Error: " + e.getMessage()); System.exit(3); }
+    }
+
+    /** Runs the CLI and returns its exit code; argument errors throw {@link IllegalArgumentException}. */
+    public static int run(String[] args) throws IOException {
+        String input = null, output = null;
+        String mergeBase = null, mergeTheirs = null, diffWith = null, tiles = null;
+        boolean validate = false, renumber = false, sort = false, pretty = true, quiet = false;
+        int round = -1, maxZoom = -1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-o", "--output" -> output = value(args, ++i);
+                case "--validate" -> validate = true;
+                case "--merge" -> {
+                    if (i + 2 >= args.length) throw new IllegalArgumentException("--merge needs a base and a theirs file");
+                    mergeBase = args[++i]; mergeTheirs = args[++i];
+                }
+                case "--diff" -> diffWith = value(args, ++i);
+                case "--round" -> {
+                    try { round = Integer.parseInt(value(args, ++i)); } catch (NumberFormatException e) { throw new IllegalArgumentException("--round needs a number of digits"); }
+                    if (round < 0 || round > 10) throw new IllegalArgumentException("--round must be between 0 and 10");
+                }
+                case "--tiles" -> tiles = value(args, ++i);
+                case "--max-zoom" -> {
+                    try { maxZoom = Integer.parseInt(value(args, ++i)); } catch (NumberFormatException e) { throw new IllegalArgumentException("--max-zoom needs a level"); }
+                    if (maxZoom < 0 || maxZoom > 20) throw new IllegalArgumentException("--max-zoom must be between 0 and 20");
+                }
+                case "--renumber" -> renumber = true;
+                case "--sort" -> sort = true;
+                case "--minify" -> pretty = false;
+                case "--pretty" -> pretty = true;
+                case "-q", "--quiet" -> quiet = true;
+                case "-h", "--help" -> { System.out.print(USAGE); return 0; }
+                default -> {
+                    if (args[i].startsWith("-") && !args[i].equals("-")) throw new IllegalArgumentException("Unknown option " + args[i]);
+                    if (input != null) throw new IllegalArgumentException("Only one input file is accepted");
+                    input = args[i];
+                }
+            }
+        }
+        if (input == null) throw new IllegalArgumentException("No input file given");
+
+        HighwayCli cli = new HighwayCli(System.err, quiet);
+        long t = System.nanoTime();
+        HighwaysData data = input.equals("-") ? HighwaysReader.read(System.in, null) : HighwaysReader.read(Path.of(input), null);
+        t = cli.stage("read", t, count(data));
+        PrintStream report = "-".equals(output) ? System.err : System.out;
+        int exit = 0;
+        if (mergeBase != null) {
+            HighwaysData base = HighwaysReader.read(Path.of(mergeBase), null), theirs = HighwaysReader.read(Path.of(mergeTheirs), null);
+            t = cli.stage("read", t, "base and theirs");
+            HighwaysMerge.Result merged = HighwaysMerge.merge(base, data, theirs);
+            data = merged.merged();
+            t = cli.stage("merge", t, merged.conflicts().size() + " conflicts");
+            merged.conflicts().forEach(report::println);
+            if (!merged.conflicts().isEmpty()) exit = 1;
+        }
+        if (diffWith != null) {
+            HighwaysData other = HighwaysReader.read(Path.of(diffWith), null);
+            t = cli.stage("read", t, diffWith);
+            List<HighwaysDiff.Change> changes = HighwaysDiff.diff(data, other);
+            t = cli.stage("diff", t, changes.size() + " changes");
+            changes.forEach(report::println);
+        }
+        if (round >= 0) { round(data, round); t = cli.stage("round", t, null); }
+        if (renumber) t = cli.stage("renumber", t, renumber(data).detail());
+        if (sort) { sort(data); t = cli.stage("sort", t, null); }
+        if (validate) {
+            List<HighwaysValidator.Problem> problems = HighwaysValidator.validate(data);
+            long errors = problems.stream().filter(p -> p.severity() == HighwaysValidator.Severity.ERROR).count();
+            t = cli.stage("validate", t, errors + " errors, " + (problems.size() - errors) + " warnings");
+            problems.forEach(report::println);
+            if (errors > 0) exit = 1;
+        }
+        if (tiles != null) {
+            TileExporter.Stats st = TileExporter.export(data, Path.of(tiles), maxZoom >= 0 ? maxZoom : TileExporter.defaultMaxZoom(data));
+            t = cli.stage("tiles", t, st.toString());
+        }
+        if (output != null) {
+            if (output.equals("-")) HighwaysWriter.write(data, System.out, pretty);
+            else HighwaysWriter.write(data, Path.of(output), pretty);
+            cli.stage("write", t, null);
+        }
+        return exit;
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        return args[i];
+    }
+
+    private long stage(String name, long start, String detail) {
+        long now = System.nanoTime();
+        if (!quiet) log.printf(Locale.ROOT, "%-9s %7.1f ms%s%n", name, (now - start) / 1e6, detail == null ? "" : "  (" + detail + ")");
+        return now;
+    }
+
+    private static String count(HighwaysData data) {
+        int lines = data.lines == null ? 0 : data.lines.values().stream().mapToInt(Map::size).sum();
+        return (data.stations == null ? 0 : data.stations.size()) + " stations, " + lines + " lines";
+    }
+
+    private static List<LineData> allLines(HighwaysData data) {
+        List<LineData> out = new ArrayList<>();
+        if (data.lines != null) data.lines.values().forEach(m -> out.addAll(m.values()));
+        return out;
+    }
+
+    /** Rounds station positions, station area points and every branch vertex to {@code digits} decimals. */
+    static void round(HighwaysData data, int digits) {
+        double f = Math.pow(10, digits);
+        if (data.stations != null) data.stations.parallelStream().forEach(s -> {
+            s.x = Math.round(s.x * f) / f; s.z = Math.round(s.z * f) / f;
+            if (s.areas != null) s.areas = s.areas.map(c -> Math.round(c * f) / f);
+        });
+        allLines(data).parallelStream().filter(ld -> ld != null && ld.branches != null).forEach(ld -> ld.branches.values().forEach(br -> {
+            Polyline v = br == null ? null : br.vertices;
+            if (v != null) for (int i = 0; i < v.size(); i++) v.set(i, Math.round(v.x(i) * f) / f, Math.round(v.z(i) * f) / f);
+        }));
+    }
+
+    /** What {@link #renumber} found: duplicated station ids, and distinct ids referenced by branches but no station. */
+    record Renumbered(int duplicates, int unknown) {
+        String detail() {
+            List<String> parts = new ArrayList<>();
+            if (duplicates > 0) parts.add(duplicates + " duplicate ids");
+            if (unknown > 0) parts.add(unknown + " unknown ids renumbered after the stations");
+            return parts.isEmpty() ? null : String.join(", ", parts);
+        }
+    }
+
+    /**
+     * Gives stations ids 1..n in file order and rewrites branch station lists to match. A duplicated old id
+     * maps to its first station. References to unknown ids get ids from n+1 on, in order of appearance, so they
+     * still match no station instead of picking up one of the new ids.
+     */
+    static Renumbered renumber(HighwaysData data) {
+        if (data.stations == null) return new Renumbered(0, 0);
+        Map<Integer, Integer> remap = new HashMap<>();
+        int dup = 0, next = 1;
+        for (Station s : data.stations) { if (remap.putIfAbsent(s.id, next) != null) dup++; s.id = next++; }
+        int known = remap.size();
+        // Numbered in one ordered pass first, so the parallel rewrite below only reads the map
+        for (LineData ld : allLines(data)) if (ld != null && ld.branches != null) for (LineData.Branch br : ld.branches.values()) {
+            if (br != null && br.stations != null) for (Object o : br.stations) if (o instanceof Number n && n.doubleValue() == n.intValue() && !remap.containsKey(n.intValue())) remap.put(n.intValue(), next++);
+        }
+        int unknown = remap.size() - known;
+        allLines(data).parallelStream().filter(ld -> ld != null && ld.branches != null).forEach(ld -> ld.branches.values().forEach(br -> {
+            if (br == null || br.stations == null) return;
+            for (ListIterator<Object> it = br.stations.listIterator(); it.hasNext();) {
+                if (it.next() instanceof Number n && n.doubleValue() == n.intValue()) {
+                    it.set(remap.get(n.intValue()));
+                }
+            }
+        }));
+        return new Renumbered(dup, unknown);
+    }
+
+    /** Sorts stations by id, and categories, lines, branches and station connections by name. */
+    static void sort(HighwaysData data) {
+        if (data.stations != null) {
+            data.stations.sort(Comparator.comparingInt(s -> s.id));
+            data.stations.parallelStream().filter(s -> s.lines != null).forEach(s -> s.lines.sort());
+        }
+        if (data.lines != null) {
+            Map<String, Map<String, LineData>> sorted = new LinkedHashMap<>();
+            new TreeMap<>(data.lines).forEach((cat, m) -> sorted.put(cat, new LinkedHashMap<>(new TreeMap<>(m))));
+            data.lines = sorted;
+            allLines(data).parallelStream().filter(ld -> ld != null && ld.branches != null).forEach(ld -> ld.branches = new LinkedHashMap<>(new TreeMap<>(ld.branches)));
+        }
+    }
+}
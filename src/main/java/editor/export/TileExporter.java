@@ -0,0 +1,216 @@
+package editor.export;
+
+import com.google.gson.Gson;
+import editor.BranchLod;
+import editor.MapIndex;
+import editor.MapRenderer;
+import editor.models.*;
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders the network into a z/x/y pyramid of PNG tiles for the web map, with the editor's own drawing code.
+ * Level 0 is one tile over the network's bounding square and each level doubles the resolution. Tiles render
+ * in parallel, one {@link MapRenderer} per thread, and tiles with nothing on them are not written.
+ * <p>
+ * A manifest next to the tiles records the pyramid's geometry and, per tile, a fingerprint of every station,
+ * area and branch segment reaching into it. The next export into the same directory re-renders only the tiles whose
+ * fingerprint changed and deletes the ones nothing reaches any more, including levels past a lowered maximum zoom.
+ * Only growing the network out of its square moves the pyramid and re-renders everything.
+ */
+public final class TileExporter {
+    public static final int SIZE = 256;
+    private static final String MANIFEST = "tiles.json";
+    private static final double PAD = 64;
+    private static final Gson GSON = new Gson();
+
+    /** Tiles rendered, of which written and blank; tiles left as they were; stale tiles deleted. */
+    public record Stats(int rendered, int written, int blank, int unchanged, int deleted, boolean full) {
+        @Override public String toString() {
+            return (full ? "full: " : "") + rendered + " rendered (" + written + " written, " + blank + " blank), " + unchanged + " unchanged, " + deleted + " deleted";
+        }
+    }
+
+    /** Written as tiles.json; the web map reads the origin, extent and zoom range from it too. */
+    private static final class Manifest {
+        int version = 1, tileSize = SIZE, maxZoom;
+        double originX, originZ, extent;
+        Map<String, Long> tiles = new HashMap<>();
+
+        boolean sameGeometry(Manifest o) { return o != null && o.version == version && o.tileSize == tileSize && o.originX == originX && o.originZ == originZ && o.extent == extent; }
+    }
+
+    private TileExporter() {}
+
+    /** Smallest level at which one block is at least a pixel wide, for the network's bounding square. */
+    public static int defaultMaxZoom(HighwaysData data) {
+        double[] b = bounds(data);
+        if (b == null) return 0;
+        return Math.max(0, 64 - Long.numberOfLeadingZeros((long) Math.ceil(extent(b) / SIZE) - 1));
+    }
+
+    public static Stats export(HighwaysData data, Path dir, int maxZoom) throws IOException {
+        double[] b = bounds(data);
+        if (b == null) return new Stats(0, 0, 0, 0, 0, true);
+        Manifest m = new Manifest();
+        m.maxZoom = maxZoom; m.extent = extent(b);
+        m.originX = Math.floor((b[0] - PAD) / SIZE) * SIZE; m.originZ = Math.floor((b[1] - PAD) / SIZE) * SIZE;
+        if (m.originX + m.extent < b[2] + PAD || m.originZ + m.extent < b[3] + PAD) m.extent *= 2;
+        Manifest old = readManifest(dir);
+        boolean full = !m.sameGeometry(old);
+        Map<String, Long> previous = full || old.tiles == null ? Map.of() : old.tiles;
+        fingerprint(data, m);
+
+        List<String> todo = new ArrayList<>();
+        m.tiles.forEach((key, fp) -> { if (!fp.equals(previous.get(key))) todo.add(key); });
+        List<String> stale = new ArrayList<>();
+        if (old != null && old.tiles != null) for (String key : old.tiles.keySet()) if (!m.tiles.containsKey(key)) stale.add(key);
+
+        MapIndex index = new MapIndex();
+        index.rebuild(data);
+        ThreadLocal<MapRenderer> renderers = ThreadLocal.withInitial(MapRenderer::new);
+        ThreadLocal<BranchLod> lods = ThreadLocal.withInitial(BranchLod::new);
+        AtomicInteger written = new AtomicInteger(), blank = new AtomicInteger();
+        try {
+            todo.parallelStream().forEach(key -> {
+                String[] p = key.split("/");
+                int z = Integer.parseInt(p[0]), x = Integer.parseInt(p[1]), y = Integer.parseInt(p[2]);
+                double zoom = SIZE * (double)(1 << z) / m.extent;
+                BufferedImage img = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g = img.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                MapRenderer r = renderers.get();
+                r.setView(zoom, m.originX + x * (double)SIZE / zoom, m.originZ + y * (double)SIZE / zoom, 0, 0);
+                r.paintNetwork(g, data, index, lods.get(), null, SIZE, SIZE);
+                g.dispose();
+                Path file = dir.resolve(key + ".png");
+                try {
+                    if (isBlank(img)) { Files.deleteIfExists(file); blank.incrementAndGet(); return; }
+                    Files.createDirectories(file.getParent());
+                    ImageIO.write(img, "png", file.toFile());
+                    written.incrementAndGet();
+                } catch (IOException e) { throw new UncheckedIOException(e); }
+            });
+        } catch (UncheckedIOException e) { throw e.getCause(); }
+        for (String key : stale) delete(dir, key);
+        writeManifest(dir, m);
+        return new Stats(todo.size(), written.get(), blank.get(), m.tiles.size() - todo.size(), stale.size(), full);
+    }
+
+    /**
+     * Fingerprint of each tile: the sum of hashes of every station, area and branch segment whose box, grown by what
+     * the renderer draws around it, reaches into the tile. Tiles nothing reaches get no entry.
+     */
+    private static void fingerprint(HighwaysData data, Manifest m) {
+        for (int z = 0; z <= m.maxZoom; z++) {
+            double zoom = SIZE * (double)(1 << z) / m.extent, margin = (MapRenderer.STATION_MARGIN + 4 * zoom) / zoom, tile = SIZE / zoom;
+            int level = z;
+            if (data.stations != null) for (Station s : data.stations) {
+                long h = mix(Double.hashCode(s.x) * 31L + Double.hashCode(s.z), Objects.hashCode(s.type));
+                mark(m, level, tile, s.x - margin, s.z - margin, s.x + margin, s.z + margin, h);
+                if (s.areas != null) for (int i = 0; i < s.areas.size(); i++) {
+                    if (s.areas.points(i) < 3) continue;
+                    long ah = s.areas.points(i);
+                    for (int k = 0; k < s.areas.points(i); k++) ah = mix(ah, Double.hashCode(s.areas.x(i, k)) * 31L + Double.hashCode(s.areas.z(i, k)));
+                    double am = MapRenderer.AREA_MARGIN / zoom;
+                    mark(m, level, tile, s.areas.minX(i) - am, s.areas.minZ(i) - am, s.areas.maxX(i) + am, s.areas.maxZ(i) + am, ah);
+                }
+            }
+            if (data.lines != null) data.lines.forEach((cat, lines) -> lines.forEach((name, ld) -> {
+                if (ld.branches == null) return;
+                long color = Objects.hashCode(ld.color);
+                for (LineData.Branch br : ld.branches.values()) {
+                    Polyline v = br.vertices;
+                    if (v == null) continue;
+                    for (int i = 0; i + 1 < v.size(); i++) {
+                        double ax = v.x(i), az = v.z(i), bx = v.x(i+1), bz = v.z(i+1);
+                        long h = mix(mix(Double.hashCode(ax) * 31L + Double.hashCode(az), Double.hashCode(bx) * 31L + Double.hashCode(bz)), color);
+                        mark(m, level, tile, Math.min(ax, bx) - margin, Math.min(az, bz) - margin, Math.max(ax, bx) + margin, Math.max(az, bz) + margin, h);
+                    }
+                }
+            }));
+        }
+    }
+
+    private static void mark(Manifest m, int z, double tile, double x0, double z0, double x1, double z1, long h) {
+        int n = 1 << z;
+        int tx0 = Math.max(0, (int)Math.floor((x0 - m.originX) / tile)), tx1 = Math.min(n - 1, (int)Math.floor((x1 - m.originX) / tile));
+        int tz0 = Math.max(0, (int)Math.floor((z0 - m.originZ) / tile)), tz1 = Math.min(n - 1, (int)Math.floor((z1 - m.originZ) / tile));
+        for (int ty = tz0; ty <= tz1; ty++) for (int tx = tx0; tx <= tx1; tx++) m.tiles.merge(z + "/" + tx + "/" + ty, h, Long::sum);
+    }
+
+    /** 64-bit finalizer over two values, so that summed fingerprints don't cancel out. */
+    private static long mix(long a, long b) {
+        long h = a * 0x9E3779B97F4A7C15L + b;
+        h ^= h >>> 33; h *= 0xFF51AFD7ED558CCDL; h ^= h >>> 33; h *= 0xC4CEB9FE1A85EC53L; h ^= h >>> 33;
+        return h;
+    }
+
+    private static boolean isBlank(BufferedImage img) {
+        for (int px : ((DataBufferInt) img.getRaster().getDataBuffer()).getData()) if (px >>> 24 != 0) return false;
+        return true;
+    }
+
+    /** {minX, minZ, maxX, maxZ} over all stations, areas and vertices, or null for an empty map. */
+    private static double[] bounds(HighwaysData data) {
+        double[] b = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        if (data.stations != null) for (Station s : data.stations) {
+            grow(b, s.x, s.z);
+            if (s.areas != null) for (int i = 0; i < s.areas.size(); i++) if (s.areas.points(i) >= 3) { grow(b, s.areas.minX(i), s.areas.minZ(i)); grow(b, s.areas.maxX(i), s.areas.maxZ(i)); }
+        }
+        if (data.lines != null) for (Map<String, LineData> lines : data.lines.values()) for (LineData ld : lines.values()) {
+            if (ld.branches != null) for (LineData.Branch br : ld.branches.values()) if (br.vertices != null) for (int i = 0; i < br.vertices.size(); i++) grow(b, br.vertices.x(i), br.vertices.z(i));
+        }
+        return b[0] > b[2] ? null : b;
+    }
+
+    private static void grow(double[] b, double x, double z) {
+        if (!Double.isFinite(x) || !Double.isFinite(z)) return;
+        b[0] = Math.min(b[0], x); b[1] = Math.min(b[1], z); b[2] = Math.max(b[2], x); b[3] = Math.max(b[3], z);
+    }
+
+    /** Side of the square covered by level 0: a power of two, so levels stay stable while the network grows inside it. */
+    private static double extent(double[] b) {
+        double side = Math.max(b[2] - b[0], b[3] - b[1]) + 2 * PAD + SIZE;
+        return Math.max(SIZE, Long.highestOneBit((long) Math.ceil(side) - 1) << 1);
+    }
+
+    /** Deletes a tile, and its column and level directories once they are empty. */
+    private static void delete(Path dir, String key) throws IOException {
+        Path f = dir.resolve(key + ".png");
+        Files.deleteIfExists(f);
+        for (Path p = f.getParent(); !p.equals(dir); p = p.getParent()) {
+            try { Files.deleteIfExists(p); } catch (DirectoryNotEmptyException e) { break; }
+        }
+    }
+
+    private static Manifest readManifest(Path dir) {
+        Path f = dir.resolve(MANIFEST);
+        if (!Files.isRegularFile(f)) return null;
+        try (Reader r = Files.newBufferedReader(f, StandardCharsets.UTF_8)) { return GSON.fromJson(r, Manifest.class); }
+        catch (IOException | RuntimeException e) { return null; }
+    }
+
+    private static void writeManifest(Path dir, Manifest m) throws IOException {
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, "." + MANIFEST, ".tmp");
+        try {
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) { GSON.toJson(m, w); }
+            try { Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING); }
+            catch (AtomicMoveNotSupportedException e) { Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING); }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
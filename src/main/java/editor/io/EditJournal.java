@@ -0,0 +1,435 @@
+package editor.io;
+
+import com.google.gson.Gson;
+import editor.merge.SequenceDiff;
+import editor.models.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log of edits, kept next to the JSON as {@code <name>.journal}, so a crash loses nothing that was
+ * applied. The editor hands each applied change over as a copy of the station or line it touched, which costs a
+ * few microseconds on the EDT; a writer thread turns it into a small record and appends everything queued since
+ * its last write with a single {@code force}. Branch paths and station lists are written as {@link SequenceDiff}
+ * hunks against what the journal last wrote for them, so moving one vertex appends a few dozen bytes.
+ * <p>
+ * The header records the size and CRC32C of the JSON the records apply to, and every record carries its own
+ * length and checksum, so replay stops cleanly at a torn last write. After a save the records up to the saved
+ * snapshot are dropped ({@link #saved}); the file is deleted once nothing is left in it.
+ */
+public final class EditJournal implements Closeable {
+    private static final int MAGIC = 0x48574A4E; // "HWJN"
+    private static final int VERSION = 1;
+    private static final int HEADER = 24;
+    private static final String SUFFIX = ".journal";
+    private static final byte STATION = 1, STATION_REMOVED = 2, LINE = 3, LINE_REMOVED = 4, VERTICES = 5, STATIONS = 6, BRANCH_REMOVED = 7;
+    private static final Gson GSON = new Gson();
+
+    private interface Op {}
+    private record StationOp(Station s) implements Op {}
+    private record StationRemovedOp(int id) implements Op {}
+    private record LineOp(String category, String name, LineData ld) implements Op {}
+    private record LineRemovedOp(String category, String name) implements Op {}
+    private record MarkOp(long id) implements Op {}
+    private record SavedOp(long mark, Path json, long size, long crc) implements Op {}
+    private record RebaseOp(long size, long crc) implements Op {}
+    private record CloseOp(CountDownLatch done) implements Op {}
+
+    /** What the journal last wrote for a branch, i.e. what replaying it yields. */
+    private record Shadow(List<Point> vertices, List<Object> stations) {}
+    private record Point(double x, double z) {}
+
+    private final BlockingQueue<Op> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private long marks;
+    private volatile IOException failure;
+
+    // Writer thread only
+    private Path file;
+    private long size, crc;
+    private FileChannel ch;
+    private final Map<Long, Long> markOffsets = new HashMap<>();
+    private final Map<String, Map<String, Shadow>> shadows = new HashMap<>();
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream(1 << 12);
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(record);
+
+    private EditJournal(Path json, long size, long crc) {
+        this.file = sidecar(json); this.size = size; this.crc = crc;
+        writer = new Thread(this::run, "journal");
+        writer.setDaemon(true);
+    }
+
+    public static Path sidecar(Path json) { return json.resolveSibling(json.getFileName() + SUFFIX); }
+
+    /** Whether the JSON has a journal with at least one record in it; doesn't check that it belongs to this version. */
+    public static boolean exists(Path json) {
+        try { return Files.size(sidecar(json)) > HEADER; } catch (IOException e) { return false; }
+    }
+
+    /**
+     * Applies the journal's records to a model loaded from the JSON it was written against. Returns how many
+     * were applied, or -1 if there is no journal or it was written against a different version of the file.
+     */
+    public static int replay(Path json, long jsonSize, long jsonCrc, HighwaysData data) throws IOException {
+        Path f = sidecar(json);
+        if (!Files.isRegularFile(f)) return -1;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(f), 1 << 16))) {
+            if (!header(in, jsonSize, jsonCrc)) return -1;
+            Replay r = new Replay(data);
+            scan(in, r::apply);
+            return r.count;
+        }
+    }
+
+    /**
+     * Starts journaling edits to a model loaded from or saved to {@code json}, whose size and CRC32C are given.
+     * With {@code keep} the existing journal was replayed into the model and is appended to; otherwise it is
+     * discarded.
+     */
+    public static EditJournal open(Path json, long jsonSize, long jsonCrc, boolean keep) throws IOException {
+        EditJournal j = new EditJournal(json, jsonSize, jsonCrc);
+        if (keep && Files.isRegularFile(j.file)) {
+            long end;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(j.file), 1 << 16))) {
+                end = header(in, jsonSize, jsonCrc) ? HEADER + scan(in, null) : 0;
+            }
+            if (end > HEADER) {
+                j.ch = FileChannel.open(j.file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                j.ch.truncate(end).position(end); // drop a torn last record
+            }
+        }
+        if (j.ch == null) Files.deleteIfExists(j.file);
+        j.writer.start();
+        return j;
+    }
+
+    public void station(Station s) { queue.add(new StationOp(s.copy())); }
+
+    public void stationRemoved(int id) { queue.add(new StationRemovedOp(id)); }
+
+    /** A line's fields, branches or paths changed, or it was added. */
+    public void line(String category, String name, LineData ld) { queue.add(new LineOp(category, name, ld.copy())); }
+
+    public void lineRemoved(String category, String name) { queue.add(new LineRemovedOp(category, name)); }
+
+    /** Marks the point a save snapshot is taken; pass the result to {@link #saved} once that snapshot is on disk. */
+    public long mark() {
+        long id = ++marks;
+        queue.add(new MarkOp(id));
+        return id;
+    }
+
+    /** The snapshot taken at {@code mark} was written to {@code json}: only edits made since then are kept, now against that file. */
+    public void saved(long mark, Path json, long jsonSize, long jsonCrc) { queue.add(new SavedOp(mark, json, jsonSize, jsonCrc)); }
+
+    /**
+     * The JSON changed on disk but the open model was kept: the records now apply to that version of the file.
+     * The caller journals whatever differs between the two, so replaying over the new file still yields the model.
+     */
+    public void rebase(long jsonSize, long jsonCrc) { queue.add(new RebaseOp(jsonSize, jsonCrc)); }
+
+    /** Why the journal stopped writing, or null while it is working. */
+    public IOException failure() { return failure; }
+
+    /** Writes everything queued and stops; the journal stays on disk if it has records. */
+    @Override public void close() {
+        CountDownLatch done = new CountDownLatch(1);
+        queue.add(new CloseOp(done));
+        try { done.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+
+    private void run() {
+        List<Op> ops = new ArrayList<>();
+        while (true) {
+            try { ops.add(queue.take()); } catch (InterruptedException e) { return; }
+            queue.drainTo(ops);
+            CountDownLatch closed = null;
+            try {
+                for (Op op : ops) {
+                    if (op instanceof CloseOp c) { closed = c.done; break; }
+                    if (failure == null) apply(op);
+                }
+                if (failure == null) commit();
+            } catch (IOException | RuntimeException e) {
+                failure = e instanceof IOException io ? io : new IOException(e);
+                batch.reset();
+            }
+            ops.clear();
+            if (closed != null) {
+                try { if (ch != null) ch.close(); } catch (IOException ignored) {}
+                closed.countDown();
+                return;
+            }
+        }
+    }
+
+    private void apply(Op op) throws IOException {
+        if (op instanceof StationOp o) { begin(STATION); writeString(GSON.toJson(o.s)); end(); }
+        else if (op instanceof StationRemovedOp o) { begin(STATION_REMOVED); out.writeInt(o.id); end(); }
+        else if (op instanceof LineOp o) writeLine(o.category, o.name, o.ld);
+        else if (op instanceof LineRemovedOp o) { begin(LINE_REMOVED); writeString(o.category); writeString(o.name); end(); shadows.remove(key(o.category, o.name)); }
+        else if (op instanceof MarkOp o) { commit(); markOffsets.put(o.id, ch == null ? HEADER : ch.position()); }
+        else if (op instanceof SavedOp o) { commit(); compact(o); }
+        else if (op instanceof RebaseOp o) { commit(); rebase(o); }
+    }
+
+    /** Line fields, then each branch whose path or stations differ from what was last written for it. */
+    private void writeLine(String category, String name, LineData ld) throws IOException {
+        begin(LINE); writeString(category); writeString(name);
+        writeString(ld.prefix); writeString(ld.code); writeString(ld.color); out.writeInt(ld.y);
+        end();
+        Map<String, Shadow> known = shadows.computeIfAbsent(key(category, name), k -> new HashMap<>());
+        Map<String, LineData.Branch> branches = ld.branches == null ? Map.of() : ld.branches;
+        for (Iterator<String> it = known.keySet().iterator(); it.hasNext();) {
+            String br = it.next();
+            if (branches.containsKey(br)) continue;
+            begin(BRANCH_REMOVED); writeString(category); writeString(name); writeString(br); end();
+            it.remove();
+        }
+        for (Map.Entry<String, LineData.Branch> e : branches.entrySet()) {
+            Shadow was = known.get(e.getKey());
+            Shadow now = new Shadow(points(e.getValue().vertices), ids(e.getValue().stations));
+            if (was == null || !was.vertices.equals(now.vertices)) {
+                begin(VERTICES); writeString(category); writeString(name); writeString(e.getKey());
+                hunks(was == null ? null : was.vertices, now.vertices, p -> { out.writeDouble(p.x); out.writeDouble(p.z); });
+                end();
+            }
+            if (was == null || !was.stations.equals(now.stations)) {
+                begin(STATIONS); writeString(category); writeString(name); writeString(e.getKey());
+                hunks(was == null ? null : was.stations, now.stations, id -> writeString(GSON.toJson(id)));
+                end();
+            }
+            known.put(e.getKey(), now);
+        }
+    }
+
+    private interface ElementWriter<T> { void write(T t) throws IOException; }
+
+    /** Hunks turning {@code was} into {@code now}; with nothing written before, one hunk replacing everything. */
+    private <T> void hunks(List<T> was, List<T> now, ElementWriter<T> element) throws IOException {
+        List<SequenceDiff.Hunk> hunks = was == null ? null : SequenceDiff.diff(was, now);
+        out.writeBoolean(was == null);
+        if (hunks == null) hunks = List.of(new SequenceDiff.Hunk(0, 0, 0, now.size()));
+        out.writeInt(hunks.size());
+        for (SequenceDiff.Hunk h : hunks) {
+            out.writeInt(h.baseFrom()); out.writeInt(h.baseTo()); out.writeInt(h.added());
+            for (int i = h.otherFrom(); i < h.otherTo(); i++) element.write(now.get(i));
+        }
+    }
+
+    private void begin(byte type) throws IOException { record.reset(); out.writeByte(type); }
+
+    /** Frames the record as length, CRC32C, payload and adds it to the batch. */
+    private void end() throws IOException {
+        out.flush();
+        CRC32C c = new CRC32C();
+        c.update(record.toByteArray());
+        DataOutputStream b = new DataOutputStream(batch);
+        b.writeInt(record.size()); b.writeInt((int) c.getValue());
+        record.writeTo(b);
+    }
+
+    /** Appends the batch with one write and one force: the group commit. */
+    private void commit() throws IOException {
+        if (batch.size() == 0) return;
+        if (ch == null) {
+            ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ch.write(ByteBuffer.wrap(header(size, crc)));
+        }
+        ByteBuffer buf = ByteBuffer.wrap(batch.toByteArray());
+        while (buf.hasRemaining()) ch.write(buf);
+        ch.force(false);
+        batch.reset();
+    }
+
+    /** Rewrites the journal as the records after the saved mark, against the file the snapshot went to. */
+    private void compact(SavedOp o) throws IOException {
+        Long from = markOffsets.remove(o.mark);
+        if (from == null) return;
+        byte[] tail = new byte[0];
+        if (ch != null) {
+            long end = ch.position();
+            ByteBuffer buf = ByteBuffer.allocate((int)(end - from));
+            while (buf.hasRemaining() && ch.read(buf, from + buf.position()) >= 0) {}
+            tail = buf.array();
+            ch.close(); ch = null;
+        }
+        Path old = file;
+        file = sidecar(o.json); size = o.size; crc = o.crc;
+        markOffsets.replaceAll((id, off) -> off - from + HEADER);
+        markOffsets.values().removeIf(off -> off < HEADER);
+        if (!old.equals(file)) Files.deleteIfExists(old);
+        if (tail.length == 0) { Files.deleteIfExists(file); return; }
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), "." + file.getFileName(), ".tmp");
+        try {
+            try (OutputStream f = Files.newOutputStream(tmp, StandardOpenOption.TRUNCATE_EXISTING)) { f.write(header(size, crc)); f.write(tail); }
+            HighwaysWriter.keepPermissions(file, tmp);
+            try { Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING); }
+            catch (AtomicMoveNotSupportedException e) { Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING); }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ch.position(ch.size());
+    }
+
+    /** Rewrites the header in place for the file's new size and checksum. */
+    private void rebase(RebaseOp o) throws IOException {
+        size = o.size; crc = o.crc;
+        if (ch == null) return;
+        ByteBuffer h = ByteBuffer.wrap(header(size, crc));
+        while (h.hasRemaining()) ch.write(h, h.position());
+        ch.force(false);
+    }
+
+    private void writeString(String s) throws IOException {
+        if (s == null) { out.writeInt(-1); return; }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length); out.write(b);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) return null;
+        byte[] b = new byte[n];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] header(long size, long crc) {
+        return ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).putLong(size).putLong(crc).array();
+    }
+
+    private static boolean header(DataInputStream in, long size, long crc) throws IOException {
+        try { return in.readInt() == MAGIC && in.readInt() == VERSION && in.readLong() == size && in.readLong() == crc; }
+        catch (EOFException e) { return false; }
+    }
+
+    private interface RecordVisitor { void visit(DataInputStream payload) throws IOException; }
+
+    /** Visits intact records in order and returns the length they take; stops at the first short or corrupt one. */
+    private static long scan(DataInputStream in, RecordVisitor visitor) throws IOException {
+        long length = 0;
+        while (true) {
+            int n, sum;
+            byte[] payload;
+            try {
+                n = in.readInt(); sum = in.readInt();
+                if (n <= 0 || n > 1 << 28) return length;
+                payload = new byte[n];
+                in.readFully(payload);
+            } catch (EOFException e) { return length; }
+            CRC32C c = new CRC32C();
+            c.update(payload);
+            if ((int) c.getValue() != sum) return length;
+            if (visitor != null) visitor.visit(new DataInputStream(new ByteArrayInputStream(payload)));
+            length += 8 + n;
+        }
+    }
+
+    /** Applies records to a model; lines and branches a record refers to are created if missing. */
+    private static final class Replay {
+        final HighwaysData data;
+        final Map<Integer, Station> byId = new HashMap<>();
+        int count;
+
+        Replay(HighwaysData data) {
+            this.data = data;
+            if (data.stations == null) data.stations = new ArrayList<>();
+            if (data.lines == null) data.lines = new LinkedHashMap<>();
+            for (Station s : data.stations) byId.putIfAbsent(s.id, s);
+        }
+
+        void apply(DataInputStream in) throws IOException {
+            switch (in.readByte()) {
+                case STATION -> {
+                    Station s = GSON.fromJson(readString(in), Station.class), old = byId.put(s.id, s);
+                    int i = old == null ? -1 : data.stations.indexOf(old);
+                    if (i >= 0) data.stations.set(i, s); else data.stations.add(s);
+                }
+                case STATION_REMOVED -> { Station s = byId.remove(in.readInt()); if (s != null) data.stations.remove(s); }
+                case LINE -> {
+                    LineData ld = line(readString(in), readString(in));
+                    ld.prefix = readString(in); ld.code = readString(in); ld.color = readString(in); ld.y = in.readInt();
+                }
+                case LINE_REMOVED -> {
+                    String cat = readString(in), name = readString(in);
+                    Map<String, LineData> m = data.lines.get(cat);
+                    if (m != null && m.remove(name) != null && m.isEmpty()) data.lines.remove(cat);
+                }
+                case VERTICES -> {
+                    LineData.Branch br = branch(in);
+                    List<Point> pts = points(br.vertices);
+                    patch(in, pts, () -> new Point(in.readDouble(), in.readDouble()));
+                    Polyline p = new Polyline(pts.size());
+                    for (Point pt : pts) p.add(pt.x, pt.z);
+                    br.vertices = p;
+                }
+                case STATIONS -> {
+                    LineData.Branch br = branch(in);
+                    List<Object> ids = ids(br.stations);
+                    patch(in, ids, () -> { Object o = GSON.fromJson(readString(in), Object.class); return o instanceof Number n && n.doubleValue() == n.intValue() ? (Object) n.intValue() : o; });
+                    br.stations = ids;
+                }
+                case BRANCH_REMOVED -> {
+                    LineData ld = line(readString(in), readString(in));
+                    ld.branches.remove(readString(in));
+                }
+                default -> throw new IOException("Unknown journal record");
+            }
+            count++;
+        }
+
+        private LineData line(String cat, String name) {
+            LineData ld = data.lines.computeIfAbsent(cat, k -> new LinkedHashMap<>()).computeIfAbsent(name, k -> new LineData());
+            if (ld.branches == null) ld.branches = new LinkedHashMap<>();
+            return ld;
+        }
+
+        private LineData.Branch branch(DataInputStream in) throws IOException {
+            return line(readString(in), readString(in)).branches.computeIfAbsent(readString(in), k -> new LineData.Branch());
+        }
+
+        private interface ElementReader<T> { T read() throws IOException; }
+
+        /** Applies hunks in order; each hunk's base positions are shifted by what the earlier ones added or removed. */
+        private static <T> void patch(DataInputStream in, List<T> list, ElementReader<T> element) throws IOException {
+            if (in.readBoolean()) list.clear();
+            int shift = 0;
+            for (int h = in.readInt(); h > 0; h--) {
+                int from = in.readInt() + shift, to = in.readInt() + shift, added = in.readInt();
+                List<T> items = new ArrayList<>(added);
+                for (int i = 0; i < added; i++) items.add(element.read());
+                List<T> range = list.subList(from, to);
+                range.clear(); range.addAll(items);
+                shift += added - (to - from);
+            }
+        }
+    }
+
+    private static List<Point> points(Polyline p) {
+        if (p == null) return new ArrayList<>();
+        List<Point> out = new ArrayList<>(p.size());
+        for (int i = 0; i < p.size(); i++) out.add(new Point(p.x(i), p.z(i)));
+        return out;
+    }
+
+    /** Station list with whole-number ids as Integers, so a diff doesn't see 5 and 5.0 as different. */
+    private static List<Object> ids(List<Object> l) {
+        if (l == null) return new ArrayList<>();
+        List<Object> out = new ArrayList<>(l.size());
+        for (Object o : l) out.add(o instanceof Number n && n.doubleValue() == n.intValue() ? (Object) n.intValue() : o);
+        return out;
+    }
+
+    private static String key(String category, String name) { return category + ": " + name; }
+}
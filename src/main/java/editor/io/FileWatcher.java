@@ -0,0 +1,61 @@
+package editor.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Calls back when another program changes one file. It watches the file's directory rather than the file,
+ * since scripts and editors often write a temporary file and move it over the original. A burst of events is
+ * reported once, after the file has been quiet for {@link #QUIET_MILLIS}; the listener runs on the watcher's
+ * own thread. Changes to other files in the directory, like the edit journal, are ignored.
+ */
+public final class FileWatcher implements Closeable {
+    public static final long QUIET_MILLIS = 300;
+
+    private final Path name;
+    private final WatchService service;
+    private final Thread thread;
+
+    public FileWatcher(Path file, Runnable listener) throws IOException {
+        Path abs = file.toAbsolutePath();
+        name = abs.getFileName();
+        service = abs.getFileSystem().newWatchService();
+        abs.getParent().register(service, ENTRY_CREATE, ENTRY_MODIFY);
+        thread = new Thread(() -> run(listener), "watch " + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run(Runnable listener) {
+        try {
+            while (true) {
+                if (!matches(service.take())) continue;
+                long quietUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS);
+                for (long left; (left = quietUntil - System.nanoTime()) > 0; ) {
+                    WatchKey key = service.poll(left, TimeUnit.NANOSECONDS);
+                    if (key != null && matches(key)) quietUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS);
+                }
+                listener.run();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /** Whether the key's events include the watched file; lost events (overflow) count as a change. */
+    private boolean matches(WatchKey key) {
+        boolean hit = false;
+        for (WatchEvent<?> e : key.pollEvents()) if (e.kind() == OVERFLOW || name.equals(e.context())) hit = true;
+        key.reset();
+        return hit;
+    }
+
+    @Override public void close() {
+        try { service.close(); } catch (IOException ignored) {}
+        thread.interrupt();
+    }
+}
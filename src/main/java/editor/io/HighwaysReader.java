@@ -0,0 +1,75 @@
+package editor.io;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import editor.models.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Single-pass streaming reader for highways.json.
+ * Stations and lines are bound one at a time straight off a buffered {@link JsonReader}, so no
+ * intermediate tree is built. Progress is reported in bytes consumed, and reading stops with an
+ * {@link InterruptedIOException} as soon as the calling thread is interrupted.
+ */
+public final class HighwaysReader {
+    private static final Gson GSON = new Gson();
+
+    private HighwaysReader() {}
+
+    public static HighwaysData read(Path file, LongConsumer bytesRead) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            return read(in, bytesRead);
+        }
+    }
+
+    public static HighwaysData read(InputStream raw, LongConsumer bytesRead) throws IOException {
+        CountingInputStream in = new CountingInputStream(raw);
+        JsonReader r = new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16));
+        HighwaysData d = new HighwaysData();
+        r.beginObject();
+        while (r.hasNext()) {
+            String name = r.nextName();
+            if (r.peek() == JsonToken.NULL) { r.nextNull(); continue; }
+            if (name.equals("stations")) {
+                d.stations = new ArrayList<>();
+                r.beginArray();
+                while (r.hasNext()) { d.stations.add(GSON.fromJson(r, Station.class)); checkpoint(in, bytesRead); }
+                r.endArray();
+            } else if (name.equals("lines")) {
+                d.lines = new LinkedHashMap<>();
+                r.beginObject();
+                while (r.hasNext()) {
+                    Map<String, LineData> cat = d.lines.computeIfAbsent(r.nextName(), k -> new LinkedHashMap<>());
+                    r.beginObject();
+                    while (r.hasNext()) { String ln = r.nextName(); cat.put(ln, GSON.fromJson(r, LineData.class)); checkpoint(in, bytesRead); }
+                    r.endObject();
+                }
+                r.endObject();
+            } else r.skipValue();
+        }
+        r.endObject();
+        if (bytesRead != null) bytesRead.accept(in.count);
+        return d;
+    }
+
+    private static void checkpoint(CountingInputStream in, LongConsumer bytesRead) throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Loading cancelled");
+        if (bytesRead != null) bytesRead.accept(in.count);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+        CountingInputStream(InputStream in) { super(in); }
+        @Override public int read() throws IOException { int b = super.read(); if (b >= 0) count++; return b; }
+        @Override public int read(byte[] b, int off, int len) throws IOException { int n = super.read(b, off, len); if (n > 0) count += n; return n; }
+        @Override public long skip(long n) throws IOException { long s = super.skip(n); count += s; return s; }
+    }
+}
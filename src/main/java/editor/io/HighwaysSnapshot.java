@@ -0,0 +1,236 @@
+package editor.io;
+
+import com.google.gson.Gson;
+import editor.models.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary cache of a highways.json, kept next to it as {@code <name>.hwsnap}. All strings go into one table
+ * up front and are referenced by index; branch geometry is stored as packed double blocks that are bulk-copied
+ * straight into {@link Polyline}s from one read of the whole file. The header records the size and CRC32C of
+ * the JSON it was written from, and {@link #readIfFresh} ignores the cache unless both still match, so the JSON
+ * stays the only source of truth. Nothing is memory-mapped: a mapping keeps the file from being replaced on
+ * Windows until it is collected.
+ */
+public final class HighwaysSnapshot {
+    private static final int MAGIC = 0x4857534E; // "HWSN"
+    private static final int VERSION = 3;
+    private static final String SUFFIX = ".hwsnap";
+    private static final Gson GSON = new Gson();
+    /** Per-thread read buffer for {@link #checksum}. */
+    private static final ThreadLocal<ByteBuffer> CHECKSUM_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1 << 18));
+
+    private HighwaysSnapshot() {}
+
+    public static Path sidecar(Path json) { return json.resolveSibling(json.getFileName() + SUFFIX); }
+
+    /** CRC32C of a file's bytes. */
+    public static long checksum(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            CRC32C crc = new CRC32C();
+            ByteBuffer buf = CHECKSUM_BUFFER.get();
+            for (buf.clear(); ch.read(buf) >= 0; buf.clear()) { buf.flip(); crc.update(buf); }
+            return crc.getValue();
+        }
+    }
+
+    /** The cached model for this JSON file, or null if there is no cache or it is stale or unreadable. */
+    public static HighwaysData readIfFresh(Path json) {
+        Path snap = sidecar(json);
+        if (!Files.isRegularFile(snap)) return null;
+        try (FileChannel ch = FileChannel.open(snap, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(Math.toIntExact(ch.size()));
+            while (b.hasRemaining() && ch.read(b) >= 0) {}
+            b.flip();
+            if (b.getInt() != MAGIC || b.getInt() != VERSION) return null;
+            long size = b.getLong(), crc = b.getLong();
+            if (size != Files.size(json) || crc != checksum(json)) return null;
+            return read(b);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Writes the cache for a JSON file of the given size and checksum, replacing any previous one atomically. */
+    public static void write(HighwaysData data, Path json, long jsonSize, long jsonCrc) throws IOException {
+        Strings strings = new Strings();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream out = new DataOutputStream(body);
+        writeModel(data, out, strings);
+        out.flush();
+
+        Path target = sidecar(json);
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            try (DataOutputStream f = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp, StandardOpenOption.TRUNCATE_EXISTING), 1 << 16))) {
+                f.writeInt(MAGIC); f.writeInt(VERSION); f.writeLong(jsonSize); f.writeLong(jsonCrc);
+                f.writeInt(strings.list.size());
+                for (String s : strings.list) { byte[] u = s.getBytes(StandardCharsets.UTF_8); f.writeInt(u.length); f.write(u); }
+                body.writeTo(f);
+            }
+            HighwaysWriter.keepPermissions(target, tmp);
+            try { Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING); }
+            catch (AtomicMoveNotSupportedException e) { Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING); }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeModel(HighwaysData data, DataOutputStream out, Strings st) throws IOException {
+        out.writeInt(data.stations == null ? -1 : data.stations.size());
+        if (data.stations != null) for (Station s : data.stations) {
+            out.writeInt(s.id); out.writeDouble(s.x); out.writeDouble(s.z);
+            out.writeInt(st.ref(s.name)); out.writeInt(st.ref(s.type)); out.writeInt(st.ref(s.notes));
+            writeInteger(out, s.y1); writeInteger(out, s.y2);
+            out.writeInt(s.lines == null ? -1 : s.lines.size());
+            if (s.lines != null) for (int i = 0; i < s.lines.size(); i++) {
+                out.writeInt(st.ref(s.lines.category(i))); out.writeInt(st.ref(s.lines.line(i)));
+                String[] det = s.lines.details(i);
+                out.writeInt(det == null ? -1 : det.length);
+                if (det != null) for (String d : det) out.writeInt(st.ref(d));
+            }
+            writeAreas(out, st, s.areas);
+        }
+        out.writeInt(data.lines == null ? -1 : data.lines.size());
+        if (data.lines != null) for (Map.Entry<String, Map<String, LineData>> cat : data.lines.entrySet()) {
+            out.writeInt(st.ref(cat.getKey())); out.writeInt(cat.getValue().size());
+            for (Map.Entry<String, LineData> e : cat.getValue().entrySet()) {
+                LineData ld = e.getValue();
+                out.writeInt(st.ref(e.getKey()));
+                out.writeInt(st.ref(ld.prefix)); out.writeInt(st.ref(ld.code)); out.writeInt(st.ref(ld.color)); out.writeInt(ld.y);
+                out.writeInt(ld.branches == null ? -1 : ld.branches.size());
+                if (ld.branches != null) for (Map.Entry<String, LineData.Branch> b : ld.branches.entrySet()) {
+                    LineData.Branch br = b.getValue();
+                    out.writeInt(st.ref(b.getKey()));
+                    Polyline v = br.vertices;
+                    out.writeInt(v == null ? -1 : v.size());
+                    if (v != null) for (int i = 0; i < v.size(); i++) { out.writeDouble(v.x(i)); out.writeDouble(v.z(i)); }
+                    out.writeInt(br.stations == null ? -1 : br.stations.size());
+                    if (br.stations != null) for (Object o : br.stations) {
+                        if (o instanceof Integer n) { out.writeByte(0); out.writeInt(n); }
+                        else if (o instanceof Number n) { out.writeByte(1); out.writeDouble(n.doubleValue()); }
+                        else { out.writeByte(2); out.writeInt(st.ref(GSON.toJson(o))); }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Areas as packed points, or as JSON if they are of a shape {@link Areas} only keeps as read. */
+    private static void writeAreas(DataOutputStream out, Strings st, Areas a) throws IOException {
+        if (a == null) { out.writeByte(0); return; }
+        if (a.isRaw()) { out.writeByte(2); out.writeInt(st.ref(GSON.toJson(a))); return; }
+        out.writeByte(1); out.writeInt(a.size());
+        for (int i = 0; i < a.size(); i++) out.writeInt(a.points(i));
+        for (int i = 0; i < a.size(); i++) for (int k = 0; k < a.points(i); k++) { out.writeDouble(a.x(i, k)); out.writeDouble(a.z(i, k)); }
+    }
+
+    private static Areas readAreas(ByteBuffer b, String[] strings) {
+        byte kind = b.get();
+        if (kind == 0) return null;
+        if (kind == 2) return GSON.fromJson(str(strings, b), Areas.class);
+        int[] starts = new int[b.getInt() + 1];
+        for (int i = 1; i < starts.length; i++) starts[i] = starts[i-1] + b.getInt();
+        double[] coords = new double[2 * starts[starts.length - 1]];
+        b.asDoubleBuffer().get(coords);
+        b.position(b.position() + 8 * coords.length);
+        return Areas.wrap(coords, starts);
+    }
+
+    private static HighwaysData read(ByteBuffer b) {
+        String[] strings = new String[b.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] u = new byte[b.getInt()]; b.get(u);
+            strings[i] = new String(u, StandardCharsets.UTF_8);
+        }
+        HighwaysData d = new HighwaysData();
+        int n = b.getInt();
+        if (n >= 0) {
+            d.stations = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                Station s = new Station();
+                s.id = b.getInt(); s.x = b.getDouble(); s.z = b.getDouble();
+                s.name = str(strings, b); s.type = str(strings, b); s.notes = str(strings, b);
+                s.y1 = readInteger(b); s.y2 = readInteger(b);
+                int conns = b.getInt();
+                if (conns >= 0) {
+                    s.lines = new StationLines();
+                    for (int c = 0; c < conns; c++) {
+                        String cat = str(strings, b), ln = str(strings, b);
+                        int len = b.getInt();
+                        String[] det = len < 0 ? null : new String[len];
+                        for (int k = 0; k < len; k++) det[k] = str(strings, b);
+                        s.lines.put(cat, ln, det);
+                    }
+                }
+                s.areas = readAreas(b, strings);
+                d.stations.add(s);
+            }
+        }
+        int cats = b.getInt();
+        if (cats >= 0) {
+            d.lines = new LinkedHashMap<>();
+            for (int c = 0; c < cats; c++) {
+                Map<String, LineData> m = new LinkedHashMap<>();
+                d.lines.put(str(strings, b), m);
+                for (int l = b.getInt(); l > 0; l--) {
+                    String name = str(strings, b);
+                    LineData ld = new LineData();
+                    ld.prefix = str(strings, b); ld.code = str(strings, b); ld.color = str(strings, b); ld.y = b.getInt();
+                    int brs = b.getInt();
+                    if (brs >= 0) {
+                        ld.branches = new LinkedHashMap<>();
+                        for (int k = 0; k < brs; k++) {
+                            String brName = str(strings, b);
+                            LineData.Branch br = new LineData.Branch();
+                            int nv = b.getInt();
+                            if (nv >= 0) {
+                                double[] coords = new double[2 * nv];
+                                b.asDoubleBuffer().get(coords);
+                                b.position(b.position() + 16 * nv);
+                                br.vertices = Polyline.wrap(coords);
+                            }
+                            int ns = b.getInt();
+                            if (ns >= 0) {
+                                br.stations = new ArrayList<>(ns);
+                                for (int j = 0; j < ns; j++) {
+                                    byte tag = b.get();
+                                    br.stations.add(tag == 0 ? (Object) b.getInt() : tag == 1 ? (Object) b.getDouble() : GSON.fromJson(str(strings, b), Object.class));
+                                }
+                            }
+                            ld.branches.put(brName, br);
+                        }
+                    }
+                    m.put(name, ld);
+                }
+            }
+        }
+        return d;
+    }
+
+    private static String str(String[] strings, ByteBuffer b) { int i = b.getInt(); return i < 0 ? null : strings[i]; }
+
+    private static void writeInteger(DataOutputStream out, Integer v) throws IOException {
+        out.writeBoolean(v != null);
+        if (v != null) out.writeInt(v);
+    }
+
+    private static Integer readInteger(ByteBuffer b) { return b.get() != 0 ? b.getInt() : null; }
+
+    /** String table under construction; equal strings share an index. */
+    private static final class Strings {
+        final List<String> list = new ArrayList<>();
+        final Map<String, Integer> ids = new HashMap<>();
+
+        int ref(String s) {
+            if (s == null) return -1;
+            return ids.computeIfAbsent(s, k -> { list.add(k); return list.size() - 1; });
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package editor.io;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import editor.models.HighwaysData;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Crash-safe writer for highways.json: the model is serialized through a buffered writer into a temp file
+ * in the target's directory, forced to disk, and then renamed over the target in one atomic step, so a
+ * failure at any point leaves either the old or the new file, never a truncated one.
+ */
+public final class HighwaysWriter {
+    private static final Gson PRETTY = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private static final Gson COMPACT = new GsonBuilder().disableHtmlEscaping().create();
+
+    private HighwaysWriter() {}
+
+    public static Gson gson(boolean pretty) { return pretty ? PRETTY : COMPACT; }
+
+    /** Serializes to an already open stream; the caller closes it. */
+    public static void write(HighwaysData data, OutputStream out, boolean pretty) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        gson(pretty).toJson(data, w);
+        w.flush();
+    }
+
+    /** Writes the file and returns the CRC32C of the bytes written, as used by {@link HighwaysSnapshot}. */
+    public static long write(HighwaysData data, Path target, boolean pretty) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, "." + target.getFileName(), ".tmp");
+        CRC32C crc = new CRC32C();
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                Writer w = new BufferedWriter(new OutputStreamWriter(new CheckedOutputStream(Channels.newOutputStream(ch), crc), StandardCharsets.UTF_8), 1 << 16);
+                gson(pretty).toJson(data, w);
+                w.flush();
+                ch.force(true);
+            }
+            keepPermissions(target, tmp);
+            try { Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING); }
+            catch (AtomicMoveNotSupportedException e) { Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING); }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return crc.getValue();
+    }
+
+    /** Gives a temp file the permissions of the file it is about to replace, since temp files are created owner-only. */
+    static void keepPermissions(Path target, Path tmp) throws IOException {
+        try { Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(target)); }
+        catch (NoSuchFileException | UnsupportedOperationException e) { /* new file, or no POSIX permissions here */ }
+    }
+}
@@ -0,0 +1,191 @@
+package editor.merge;
+
+import editor.models.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Structural difference between two maps, independent of key order and formatting: stations are matched by
+ * id, lines by category and name, branches by name, and each field is compared on its own. Branch vertex and
+ * station lists are compared with {@link SequenceDiff}.
+ */
+public final class HighwaysDiff {
+    public enum Kind { ADDED, REMOVED, CHANGED }
+
+    /** One difference; {@code field} is null when a whole station, line or branch was added or removed. */
+    public record Change(Kind kind, Integer stationId, String lineKey, String field, String detail) {
+        @Override public String toString() {
+            String where = stationId != null ? "station " + stationId : "line " + lineKey;
+            return kind + " " + where + (field == null ? "" : " " + field) + (detail == null ? "" : ": " + detail);
+        }
+    }
+
+    /** A comparable, settable field of a model object. */
+    record Field<T>(String name, Function<T, Object> get, BiConsumer<T, Object> set) {}
+
+    static final List<Field<Station>> STATION_FIELDS = List.of(
+        new Field<>("name", s -> s.name, (s, v) -> s.name = (String) v),
+        new Field<>("x", s -> s.x, (s, v) -> s.x = (Double) v),
+        new Field<>("z", s -> s.z, (s, v) -> s.z = (Double) v),
+        new Field<>("type", s -> s.type, (s, v) -> s.type = (String) v),
+        new Field<>("notes", s -> s.notes, (s, v) -> s.notes = (String) v),
+        new Field<>("y1", s -> s.y1, (s, v) -> s.y1 = (Integer) v),
+        new Field<>("y2", s -> s.y2, (s, v) -> s.y2 = (Integer) v),
+        new Field<>("areas", s -> s.areas, (s, v) -> s.areas = (Areas) v));
+
+    static final List<Field<LineData>> LINE_FIELDS = List.of(
+        new Field<>("prefix", l -> l.prefix, (l, v) -> l.prefix = (String) v),
+        new Field<>("code", l -> l.code, (l, v) -> l.code = (String) v),
+        new Field<>("color", l -> l.color, (l, v) -> l.color = (String) v),
+        new Field<>("y", l -> l.y, (l, v) -> l.y = (Integer) v));
+
+    private HighwaysDiff() {}
+
+    /** Everything that changed from {@code a} to {@code b}: stations in id order, then lines by key. */
+    public static List<Change> diff(HighwaysData a, HighwaysData b) {
+        Map<Integer, Station> sa = stations(a), sb = stations(b);
+        Map<String, LineData> la = lines(a), lb = lines(b);
+        List<Change> out = new ArrayList<>();
+        sortedUnion(sa.keySet(), sb.keySet()).parallelStream().map(id -> diffStation(id, sa.get(id), sb.get(id))).forEachOrdered(out::addAll);
+        sortedUnion(la.keySet(), lb.keySet()).parallelStream().map(key -> diffLine(key, la.get(key), lb.get(key))).forEachOrdered(out::addAll);
+        return out;
+    }
+
+    private static List<Change> diffStation(int id, Station x, Station y) {
+        if (x == null) return List.of(new Change(Kind.ADDED, id, null, null, y.name));
+        if (y == null) return List.of(new Change(Kind.REMOVED, id, null, null, x.name));
+        List<Change> out = new ArrayList<>(0);
+        for (Field<Station> f : STATION_FIELDS) {
+            Object u = f.get.apply(x), v = f.get.apply(y);
+            if (!Objects.equals(u, v)) out.add(new Change(Kind.CHANGED, id, null, f.name, u + " -> " + v));
+        }
+        if (sameConnections(x, y)) return out;
+        Map<String, String[]> ca = connections(x), cb = connections(y);
+        for (String key : sortedUnion(ca.keySet(), cb.keySet())) {
+            String[] u = ca.get(key), v = cb.get(key);
+            if (u == null) out.add(new Change(Kind.ADDED, id, key, "connection", Arrays.toString(v)));
+            else if (v == null) out.add(new Change(Kind.REMOVED, id, key, "connection", Arrays.toString(u)));
+            else if (!Arrays.equals(u, v)) out.add(new Change(Kind.CHANGED, id, key, "connection", Arrays.toString(u) + " -> " + Arrays.toString(v)));
+        }
+        return out;
+    }
+
+    private static List<Change> diffLine(String key, LineData x, LineData y) {
+        if (x == null) return List.of(new Change(Kind.ADDED, null, key, null, null));
+        if (y == null) return List.of(new Change(Kind.REMOVED, null, key, null, null));
+        List<Change> out = new ArrayList<>(0);
+        for (Field<LineData> f : LINE_FIELDS) {
+            Object u = f.get.apply(x), v = f.get.apply(y);
+            if (!Objects.equals(u, v)) out.add(new Change(Kind.CHANGED, null, key, f.name, u + " -> " + v));
+        }
+        Map<String, LineData.Branch> ba = x.branches == null ? Map.of() : x.branches, bb = y.branches == null ? Map.of() : y.branches;
+        for (String name : sortedUnion(ba.keySet(), bb.keySet())) {
+            LineData.Branch u = ba.get(name), v = bb.get(name);
+            if (u == null) out.add(new Change(Kind.ADDED, null, key, "branch " + name, null));
+            else if (v == null) out.add(new Change(Kind.REMOVED, null, key, "branch " + name, null));
+            else {
+                if (!samePath(u.vertices, v.vertices)) sequence(out, key, "branch " + name + " vertices", points(u.vertices), points(v.vertices));
+                if (!sameIds(u.stations, v.stations)) sequence(out, key, "branch " + name + " stations", list(u.stations), list(v.stations));
+            }
+        }
+        return out;
+    }
+
+    private static <T> void sequence(List<Change> out, String key, String field, List<T> u, List<T> v) {
+        List<SequenceDiff.Hunk> hunks = SequenceDiff.diff(u, v);
+        if (hunks.isEmpty()) return;
+        int added = 0, removed = 0;
+        for (SequenceDiff.Hunk h : hunks) { added += h.added(); removed += h.removed(); }
+        out.add(new Change(Kind.CHANGED, null, key, field, "+" + added + " -" + removed + " in " + hunks.size() + (hunks.size() == 1 ? " place" : " places")));
+    }
+
+    /** Vertex as a value, so vertex lists can be diffed with {@code equals}. */
+    record Point(double x, double z) {}
+
+    static List<Point> points(Polyline p) {
+        if (p == null) return List.of();
+        List<Point> out = new ArrayList<>(p.size());
+        for (int i = 0; i < p.size(); i++) out.add(new Point(p.x(i), p.z(i)));
+        return out;
+    }
+
+    static Polyline polyline(List<Point> points) {
+        Polyline p = new Polyline(points.size());
+        for (Point pt : points) p.add(pt.x, pt.z);
+        return p;
+    }
+
+    /** Branch station list with whole-number ids as Integers, so 5 and 5.0 compare equal. */
+    static List<Object> list(List<Object> l) {
+        if (l == null) return List.of();
+        List<Object> out = new ArrayList<>(l.size());
+        for (Object o : l) out.add(o instanceof Number n && n.doubleValue() == n.intValue() ? (Object) n.intValue() : o);
+        return out;
+    }
+
+    /** Paths compare by their vertices; a missing path equals an empty one. */
+    static boolean samePath(Polyline a, Polyline b) {
+        return a == null || a.isEmpty() ? b == null || b.isEmpty() : a.contentEquals(b);
+    }
+
+    /** Branch station lists compare like {@link #list} makes them, without building the copies. */
+    static boolean sameIds(List<Object> a, List<Object> b) {
+        int n = a == null ? 0 : a.size();
+        if (n != (b == null ? 0 : b.size())) return false;
+        for (int i = 0; i < n; i++) {
+            Object u = a.get(i), v = b.get(i);
+            if (u instanceof Number x && v instanceof Number y ? x.doubleValue() != y.doubleValue() : !Objects.equals(u, v)) return false;
+        }
+        return true;
+    }
+
+    /** Same connections regardless of map order, without flattening them. */
+    static boolean sameConnections(Station a, Station b) {
+        int nx = a.lines == null ? 0 : a.lines.size(), ny = b.lines == null ? 0 : b.lines.size();
+        return nx == ny && (nx == 0 || a.lines.sameAs(b.lines));
+    }
+
+    static boolean sameStation(Station a, Station b) {
+        for (Field<Station> f : STATION_FIELDS) if (!Objects.equals(f.get.apply(a), f.get.apply(b))) return false;
+        return sameConnections(a, b);
+    }
+
+    static boolean sameLine(LineData a, LineData b) {
+        for (Field<LineData> f : LINE_FIELDS) if (!Objects.equals(f.get.apply(a), f.get.apply(b))) return false;
+        Map<String, LineData.Branch> ba = a.branches == null ? Map.of() : a.branches, bb = b.branches == null ? Map.of() : b.branches;
+        if (!ba.keySet().equals(bb.keySet())) return false;
+        for (String k : ba.keySet()) if (!sameBranch(ba.get(k), bb.get(k))) return false;
+        return true;
+    }
+
+    static boolean sameBranch(LineData.Branch a, LineData.Branch b) {
+        return samePath(a.vertices, b.vertices) && sameIds(a.stations, b.stations);
+    }
+
+    /** Stations by id; with duplicate ids the first one wins, as in the validator's reference checks. */
+    static Map<Integer, Station> stations(HighwaysData d) {
+        Map<Integer, Station> m = new LinkedHashMap<>();
+        if (d.stations != null) for (Station s : d.stations) m.putIfAbsent(s.id, s);
+        return m;
+    }
+
+    /** Lines by {@code "category: name"}, in file order. */
+    static Map<String, LineData> lines(HighwaysData d) {
+        Map<String, LineData> m = new LinkedHashMap<>();
+        if (d.lines != null) d.lines.forEach((cat, ls) -> ls.forEach((name, ld) -> m.put(cat + ": " + name, ld)));
+        return m;
+    }
+
+    /** A station's connections by {@code "category: line"}. */
+    static Map<String, String[]> connections(Station s) {
+        Map<String, String[]> m = new LinkedHashMap<>();
+        if (s != null && s.lines != null) for (int i = 0; i < s.lines.size(); i++) m.put(s.lines.ref(i).key(), s.lines.details(i));
+        return m;
+    }
+
+    private static <K extends Comparable<K>> List<K> sortedUnion(Set<K> a, Set<K> b) {
+        TreeSet<K> s = new TreeSet<>(a); s.addAll(b);
+        return new ArrayList<>(s);
+    }
+}
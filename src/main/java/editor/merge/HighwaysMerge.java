@@ -0,0 +1,189 @@
+package editor.merge;
+
+import editor.merge.HighwaysDiff.Field;
+import editor.merge.HighwaysDiff.Point;
+import editor.models.*;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Three-way merge of two edited copies of a map against the version both started from. Each station field,
+ * line field and connection is merged on its own: a side that left it as in the base takes the other side's
+ * value. Branch vertex and station lists are merged hunk by hunk, so edits to different parts of one path
+ * both survive. Where both sides changed the same thing differently, "ours" is kept and a {@link Conflict}
+ * is reported. Neither input is modified.
+ */
+public final class HighwaysMerge {
+    /** Both sides changed the same thing differently; {@code ours} was kept. */
+    public record Conflict(Integer stationId, String lineKey, String field, String ours, String theirs) {
+        @Override public String toString() {
+            String where = stationId != null ? "station " + stationId : "line " + lineKey;
+            return "CONFLICT " + where + (field == null ? "" : " " + field) + ": ours " + ours + ", theirs " + theirs;
+        }
+    }
+
+    public record Result(HighwaysData merged, List<Conflict> conflicts) {}
+
+    private final List<Conflict> conflicts = new ArrayList<>();
+
+    private HighwaysMerge() {}
+
+    public static Result merge(HighwaysData base, HighwaysData ours, HighwaysData theirs) {
+        HighwaysMerge m = new HighwaysMerge();
+        HighwaysData out = new HighwaysData();
+        out.stations = m.mergeStations(base, ours, theirs);
+        out.lines = m.mergeLines(base, ours, theirs);
+        return new Result(out, m.conflicts);
+    }
+
+    /** Stations in our order, then the ones only they added in their order. */
+    private List<Station> mergeStations(HighwaysData base, HighwaysData ours, HighwaysData theirs) {
+        Map<Integer, Station> b = HighwaysDiff.stations(base), o = HighwaysDiff.stations(ours), t = HighwaysDiff.stations(theirs);
+        List<Station> out = new ArrayList<>();
+        Set<Integer> done = new HashSet<>();
+        List<Station> order = new ArrayList<>();
+        if (ours.stations != null) order.addAll(ours.stations);
+        if (theirs.stations != null) order.addAll(theirs.stations);
+        for (Station s : order) {
+            if (!done.add(s.id)) continue;
+            Station m = mergeStation(s.id, b.get(s.id), o.get(s.id), t.get(s.id));
+            if (m != null) out.add(m);
+        }
+        // Stations with duplicate ids can't be matched up; keep our extra copies as they are
+        if (ours.stations != null) for (Station s : ours.stations) if (o.get(s.id) != s) out.add(s.copy());
+        return out;
+    }
+
+    private Station mergeStation(int id, Station b, Station o, Station t) {
+        if (o == null || t == null) {
+            Station kept = o != null ? o : t;
+            if (b == null) return kept.copy(); // added on one side only
+            if (kept == null || HighwaysDiff.sameStation(b, kept)) return null; // removed, and the other side removed or kept it as is
+            conflicts.add(new Conflict(id, null, null, o == null ? "removed" : "changed", t == null ? "removed" : "changed"));
+            return o == null ? null : o.copy();
+        }
+        if (b != null && HighwaysDiff.sameStation(b, t)) return o.copy();
+        if (b != null && HighwaysDiff.sameStation(b, o)) return t.copy();
+        Station m = o.copy();
+        for (Field<Station> f : HighwaysDiff.STATION_FIELDS) f.set().accept(m, pick(id, null, f.name(), b == null ? null : f.get().apply(b), f.get().apply(o), f.get().apply(t)));
+        Map<String, String[]> cb = HighwaysDiff.connections(b), co = HighwaysDiff.connections(o), ct = HighwaysDiff.connections(t);
+        Map<String, String[]> merged = mergeMaps(co, ct, key -> {
+            String[] v = pick(id, key, "connection", cb.get(key), co.get(key), ct.get(key));
+            return v == null ? null : v.clone();
+        });
+        if (o.lines == null && t.lines == null) return m;
+        m.lines = new StationLines();
+        merged.forEach((key, det) -> {
+            int sep = key.indexOf(": ");
+            m.lines.put(key.substring(0, sep), key.substring(sep + 2), det);
+        });
+        return m;
+    }
+
+    /** Lines grouped by category as in our file, with categories and lines only they added appended. */
+    private Map<String, Map<String, LineData>> mergeLines(HighwaysData base, HighwaysData ours, HighwaysData theirs) {
+        Map<String, LineData> b = HighwaysDiff.lines(base), o = HighwaysDiff.lines(ours), t = HighwaysDiff.lines(theirs);
+        Map<String, LineData> merged = mergeMaps(o, t, key -> mergeLine(key, b.get(key), o.get(key), t.get(key)));
+        if (ours.lines == null && theirs.lines == null) return null;
+        Map<String, Map<String, LineData>> out = new LinkedHashMap<>();
+        merged.forEach((key, ld) -> {
+            int sep = key.indexOf(": ");
+            out.computeIfAbsent(key.substring(0, sep), k -> new LinkedHashMap<>()).put(key.substring(sep + 2), ld);
+        });
+        return out;
+    }
+
+    private LineData mergeLine(String key, LineData b, LineData o, LineData t) {
+        if (o == null || t == null) {
+            LineData kept = o != null ? o : t;
+            if (b == null) return kept.copy();
+            if (kept == null || HighwaysDiff.sameLine(b, kept)) return null;
+            conflicts.add(new Conflict(null, key, null, o == null ? "removed" : "changed", t == null ? "removed" : "changed"));
+            return o == null ? null : o.copy();
+        }
+        if (b != null && HighwaysDiff.sameLine(b, t)) return o.copy();
+        if (b != null && HighwaysDiff.sameLine(b, o)) return t.copy();
+        LineData m = new LineData();
+        for (Field<LineData> f : HighwaysDiff.LINE_FIELDS) f.set().accept(m, pick(null, key, f.name(), b == null ? null : f.get().apply(b), f.get().apply(o), f.get().apply(t)));
+        Map<String, LineData.Branch> bb = b == null || b.branches == null ? Map.of() : b.branches;
+        Map<String, LineData.Branch> ob = o.branches == null ? Map.of() : o.branches, tb = t.branches == null ? Map.of() : t.branches;
+        Map<String, LineData.Branch> branches = mergeMaps(ob, tb, name -> mergeBranch(key, name, bb.get(name), ob.get(name), tb.get(name)));
+        if (o.branches != null || t.branches != null) m.branches = new LinkedHashMap<>(branches);
+        return m;
+    }
+
+    private LineData.Branch mergeBranch(String key, String name, LineData.Branch b, LineData.Branch o, LineData.Branch t) {
+        if (o == null || t == null) {
+            LineData.Branch kept = o != null ? o : t;
+            if (b == null) return kept.copy();
+            if (kept == null || HighwaysDiff.sameBranch(b, kept)) return null;
+            conflicts.add(new Conflict(null, key, "branch " + name, o == null ? "removed" : "changed", t == null ? "removed" : "changed"));
+            return o == null ? null : o.copy();
+        }
+        if (b != null && HighwaysDiff.sameBranch(b, t)) return o.copy();
+        if (b != null && HighwaysDiff.sameBranch(b, o)) return t.copy();
+        LineData.Branch m = new LineData.Branch();
+        List<Point> vb = b == null ? List.of() : HighwaysDiff.points(b.vertices);
+        if (o.vertices != null || t.vertices != null) m.vertices = HighwaysDiff.polyline(mergeSequence(key, "branch " + name + " vertices", vb, HighwaysDiff.points(o.vertices), HighwaysDiff.points(t.vertices)));
+        List<Object> sb = b == null ? List.of() : HighwaysDiff.list(b.stations);
+        if (o.stations != null || t.stations != null) m.stations = new ArrayList<>(mergeSequence(key, "branch " + name + " stations", sb, HighwaysDiff.list(o.stations), HighwaysDiff.list(t.stations)));
+        return m;
+    }
+
+    /**
+     * diff3 over lists: both sides' hunks against the base are walked together, and hunks that overlap or
+     * touch form one region. A region changed on one side only takes that side; one changed identically on both
+     * sides takes either; anything else is a conflict and keeps our version of the region.
+     */
+    private <T> List<T> mergeSequence(String key, String field, List<T> base, List<T> ours, List<T> theirs) {
+        List<SequenceDiff.Hunk> a = SequenceDiff.diff(base, ours), b = SequenceDiff.diff(base, theirs);
+        if (b.isEmpty()) return ours;
+        if (a.isEmpty()) return theirs;
+        List<T> out = new ArrayList<>(Math.max(ours.size(), theirs.size()));
+        int pos = 0, ia = 0, ib = 0, da = 0, db = 0, conflictsHere = 0;
+        while (ia < a.size() || ib < b.size()) {
+            boolean aFirst = ib >= b.size() || ia < a.size() && a.get(ia).baseFrom() <= b.get(ib).baseFrom();
+            int lo = (aFirst ? a.get(ia) : b.get(ib)).baseFrom(), hi = (aFirst ? a.get(ia) : b.get(ib)).baseTo();
+            int a0 = ia, b0 = ib;
+            for (boolean grew = true; grew;) {
+                grew = false;
+                while (ia < a.size() && a.get(ia).baseFrom() <= hi) { hi = Math.max(hi, a.get(ia++).baseTo()); grew = true; }
+                while (ib < b.size() && b.get(ib).baseFrom() <= hi) { hi = Math.max(hi, b.get(ib++).baseTo()); grew = true; }
+            }
+            out.addAll(base.subList(pos, lo));
+            int growA = 0, growB = 0;
+            for (int i = a0; i < ia; i++) growA += a.get(i).added() - a.get(i).removed();
+            for (int i = b0; i < ib; i++) growB += b.get(i).added() - b.get(i).removed();
+            List<T> mine = ours.subList(lo + da, hi + da + growA), yours = theirs.subList(lo + db, hi + db + growB);
+            if (ia == a0) out.addAll(yours);
+            else if (ib == b0 || mine.equals(yours)) out.addAll(mine);
+            else { out.addAll(mine); conflictsHere++; }
+            da += growA; db += growB; pos = hi;
+        }
+        out.addAll(base.subList(pos, base.size()));
+        if (conflictsHere > 0) conflicts.add(new Conflict(null, key, field, "changed", "changed in " + conflictsHere + (conflictsHere == 1 ? " place" : " places")));
+        return out;
+    }
+
+    /** Our value unless only they changed it; a conflict if both changed it to different values. */
+    private <V> V pick(Integer id, String key, String field, V base, V ours, V theirs) {
+        if (same(ours, theirs) || same(base, theirs)) return ours;
+        if (same(base, ours)) return theirs;
+        conflicts.add(new Conflict(id, key, field, show(ours), show(theirs)));
+        return ours;
+    }
+
+    /** Union of both maps' keys, ours first, each mapped through {@code merge}; a null result drops the key. */
+    private static <V> Map<String, V> mergeMaps(Map<String, V> ours, Map<String, V> theirs, Function<String, V> merge) {
+        Map<String, V> out = new LinkedHashMap<>();
+        Set<String> keys = new LinkedHashSet<>(ours.keySet()); keys.addAll(theirs.keySet());
+        for (String k : keys) { V v = merge.apply(k); if (v != null) out.put(k, v); }
+        return out;
+    }
+
+    private static boolean same(Object a, Object b) {
+        return a instanceof String[] x && b instanceof String[] y ? Arrays.equals(x, y) : Objects.equals(a, b);
+    }
+
+    private static String show(Object v) { return v instanceof String[] a ? Arrays.toString(a) : String.valueOf(v); }
+}
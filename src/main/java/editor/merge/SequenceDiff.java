@@ -0,0 +1,70 @@
+package editor.merge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Myers' O((n+m)d) sequence diff, which is linear for the usual case of a few edits in a long list. Common
+ * prefixes and suffixes are stripped first, and past {@link #MAX_EDITS} edits the middle is reported as one
+ * replacement rather than searched further.
+ */
+public final class SequenceDiff {
+    static final int MAX_EDITS = 4096;
+
+    /** Base elements {@code [baseFrom, baseTo)} are replaced by other elements {@code [otherFrom, otherTo)}. */
+    public record Hunk(int baseFrom, int baseTo, int otherFrom, int otherTo) {
+        public int removed() { return baseTo - baseFrom; }
+        public int added() { return otherTo - otherFrom; }
+    }
+
+    private SequenceDiff() {}
+
+    /** Hunks turning {@code base} into {@code other}, in order, with at least one equal element between any two. */
+    public static <T> List<Hunk> diff(List<T> base, List<T> other) {
+        int n = base.size(), m = other.size(), pre = 0, suf = 0;
+        while (pre < n && pre < m && Objects.equals(base.get(pre), other.get(pre))) pre++;
+        while (suf < n - pre && suf < m - pre && Objects.equals(base.get(n-1-suf), other.get(m-1-suf))) suf++;
+        int bn = n - pre - suf, on = m - pre - suf;
+        if (bn == 0 && on == 0) return List.of();
+        if (bn == 0 || on == 0) return List.of(new Hunk(pre, pre + bn, pre, pre + on));
+
+        int max = Math.min(bn + on, MAX_EDITS), off = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>(); // v for k in [-d, d] after each round d
+        int found = -1;
+        search:
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && v[off+k-1] < v[off+k+1] ? v[off+k+1] : v[off+k-1] + 1, y = x - k;
+                while (x < bn && y < on && Objects.equals(base.get(pre + x), other.get(pre + y))) { x++; y++; }
+                v[off+k] = x;
+                if (x >= bn && y >= on) { trace.add(Arrays.copyOfRange(v, off - d, off + d + 1)); found = d; break search; }
+            }
+            trace.add(Arrays.copyOfRange(v, off - d, off + d + 1));
+        }
+        if (found < 0) return List.of(new Hunk(pre, pre + bn, pre, pre + on));
+
+        // Walk back from the end, growing each hunk leftwards until a run of equal elements closes it
+        List<Hunk> out = new ArrayList<>();
+        int x = bn, y = on, hb0 = 0, hb1 = 0, ho0 = 0, ho1 = 0;
+        boolean open = false;
+        for (int d = found; d > 0; d--) {
+            int[] prev = trace.get(d - 1);
+            int k = x - y;
+            boolean down = k == -d || k != d && prev[k-1 + d-1] < prev[k+1 + d-1];
+            int pk = down ? k + 1 : k - 1, px = prev[pk + d-1], py = px - pk;
+            int sx = down ? px : px + 1;
+            if (x > sx && open) { out.add(new Hunk(pre + hb0, pre + hb1, pre + ho0, pre + ho1)); open = false; }
+            if (!open) { hb0 = hb1 = px; ho0 = ho1 = py; open = true; }
+            if (down) { hb0 = px; ho0 = py; if (ho1 == py) ho1 = py + 1; }
+            else { hb0 = px; ho0 = py; if (hb1 == px) hb1 = px + 1; }
+            x = px; y = py;
+        }
+        if (open) out.add(new Hunk(pre + hb0, pre + hb1, pre + ho0, pre + ho1));
+        Collections.reverse(out);
+        return out;
+    }
+}
@@ -0,0 +1,138 @@
+package editor.models;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A station's areas: polygons of {@code [x, z]} points packed into one coordinate array, with each polygon's
+ * bounding box worked out once. Immutable, so copies of a station share it. Serialized in the same
+ * {@code [[[x, z], ...], ...]} form the map JSON has always used; areas of any other shape are kept as read
+ * and written back unchanged, but have no polygons.
+ */
+@JsonAdapter(Areas.Adapter.class)
+public final class Areas {
+    private static final double[] NO_COORDS = {};
+
+    private final double[] coords; // x, z of every point of every polygon
+    private final int[] starts;    // polygon i is points starts[i] to starts[i+1]-1
+    private final double[] bounds; // minX, minZ, maxX, maxZ of each polygon
+    private final JsonElement raw; // areas in a shape this model does not cover, or null
+
+    private Areas(double[] coords, int[] starts, JsonElement raw) {
+        this.coords = coords; this.starts = starts; this.raw = raw;
+        bounds = new double[4 * size()];
+        for (int i = 0; i < size(); i++) {
+            double minX = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+            for (int k = starts[i]; k < starts[i+1]; k++) {
+                minX = Math.min(minX, coords[2*k]); minZ = Math.min(minZ, coords[2*k+1]);
+                maxX = Math.max(maxX, coords[2*k]); maxZ = Math.max(maxZ, coords[2*k+1]);
+            }
+            bounds[4*i] = minX; bounds[4*i+1] = minZ; bounds[4*i+2] = maxX; bounds[4*i+3] = maxZ;
+        }
+    }
+
+    /** Areas over packed {@code coords}, polygon {@code i} being points {@code starts[i]} to {@code starts[i+1]-1}; takes ownership of both. */
+    public static Areas wrap(double[] coords, int[] starts) {
+        if (starts.length == 0 || starts[0] != 0 || starts[starts.length - 1] * 2 != coords.length) throw new IllegalArgumentException("Polygon starts do not match " + coords.length / 2 + " points");
+        return new Areas(coords, starts, null);
+    }
+
+    public int size() { return starts.length - 1; }
+    public int points(int i) { return starts[i+1] - starts[i]; }
+    public double x(int i, int k) { return coords[2*(starts[i] + k)]; }
+    public double z(int i, int k) { return coords[2*(starts[i] + k) + 1]; }
+    public double minX(int i) { return bounds[4*i]; }
+    public double minZ(int i) { return bounds[4*i+1]; }
+    public double maxX(int i) { return bounds[4*i+2]; }
+    public double maxZ(int i) { return bounds[4*i+3]; }
+
+    /** The same polygons with {@code f} applied to every coordinate; raw areas are returned as they are. */
+    public Areas map(DoubleUnaryOperator f) {
+        if (raw != null) return this;
+        double[] c = new double[coords.length];
+        for (int k = 0; k < c.length; k++) c[k] = f.applyAsDouble(coords[k]);
+        return new Areas(c, starts, null);
+    }
+
+    /** Whether these are areas of a shape this model does not cover, kept only to be written back. */
+    public boolean isRaw() { return raw != null; }
+
+    /** Whether polygon {@code i} contains the point, by the even-odd rule. */
+    public boolean contains(int i, double x, double z) {
+        if (x < minX(i) || x > maxX(i) || z < minZ(i) || z > maxZ(i)) return false;
+        boolean in = false;
+        for (int a = starts[i], b = starts[i+1] - 1; a < starts[i+1]; b = a++) {
+            double ax = coords[2*a], az = coords[2*a+1], bx = coords[2*b], bz = coords[2*b+1];
+            if ((az > z) != (bz > z) && x < (bx - ax) * (z - az) / (bz - az) + ax) in = !in;
+        }
+        return in;
+    }
+
+    /** Unsigned area of polygon {@code i} (shoelace formula). */
+    public double area(int i) {
+        double sum = 0;
+        for (int a = starts[i], b = starts[i+1] - 1; a < starts[i+1]; b = a++) sum += coords[2*b] * coords[2*a+1] - coords[2*a] * coords[2*b+1];
+        return Math.abs(sum) / 2;
+    }
+
+    @Override public boolean equals(Object o) {
+        return o instanceof Areas a && Arrays.equals(coords, a.coords) && Arrays.equals(starts, a.starts) && Objects.equals(raw, a.raw);
+    }
+
+    @Override public int hashCode() { return 31 * (31 * Arrays.hashCode(coords) + Arrays.hashCode(starts)) + Objects.hashCode(raw); }
+
+    @Override public String toString() { return raw != null ? raw.toString() : size() + (size() == 1 ? " area, " : " areas, ") + coords.length / 2 + " points"; }
+
+    public static final class Adapter extends TypeAdapter<Areas> {
+        private static final TypeAdapter<JsonElement> TREE = new Gson().getAdapter(JsonElement.class);
+
+        @Override public void write(JsonWriter out, Areas a) throws IOException {
+            if (a == null) { out.nullValue(); return; }
+            if (a.raw != null) { TREE.write(out, a.raw); return; }
+            out.beginArray();
+            for (int i = 0; i < a.size(); i++) {
+                out.beginArray();
+                for (int k = 0; k < a.points(i); k++) out.beginArray().value(a.x(i, k)).value(a.z(i, k)).endArray();
+                out.endArray();
+            }
+            out.endArray();
+        }
+
+        @Override public Areas read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) { in.nextNull(); return null; }
+            JsonElement e = TREE.read(in);
+            Areas a = e.isJsonArray() ? polygons(e.getAsJsonArray()) : null;
+            return a != null ? a : new Areas(NO_COORDS, new int[]{0}, e);
+        }
+
+        /** Packs {@code [[[x, z], ...], ...]}, or returns null if the array has any other shape. */
+        private static Areas polygons(JsonArray polys) {
+            int n = 0;
+            for (JsonElement p : polys) {
+                if (!p.isJsonArray()) return null;
+                for (JsonElement pt : p.getAsJsonArray()) {
+                    if (!pt.isJsonArray() || pt.getAsJsonArray().size() != 2) return null;
+                    for (JsonElement c : pt.getAsJsonArray()) if (!c.isJsonPrimitive() || !c.getAsJsonPrimitive().isNumber()) return null;
+                }
+                n += p.getAsJsonArray().size();
+            }
+            double[] coords = new double[2*n]; int[] starts = new int[polys.size() + 1];
+            int k = 0, i = 0;
+            for (JsonElement p : polys) {
+                for (JsonElement pt : p.getAsJsonArray()) { coords[k++] = pt.getAsJsonArray().get(0).getAsDouble(); coords[k++] = pt.getAsJsonArray().get(1).getAsDouble(); }
+                starts[++i] = k / 2;
+            }
+            return new Areas(coords, starts, null);
+        }
+    }
+}
@@ -1,8 +1,21 @@
 package editor.models;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class HighwaysData {
     public List<Station> stations;
     public Map<String, Map<String, LineData>> lines;
-}
\ No newline at end of file
+    
+    /** Deep copy of the editable parts of the model, e.g. to serialize it while the editor keeps going. */
+    public HighwaysData copy() {
+        HighwaysData d = new HighwaysData();
+        if (stations != null) { d.stations = new ArrayList<>(stations.size()); for (Station s : stations) d.stations.add(s.copy()); }
+        if (lines != null) {
+            d.lines = new LinkedHashMap<>();
+            lines.forEach((cat, m) -> { Map<String, LineData> c = new LinkedHashMap<>(); m.forEach((n, ld) -> c.put(n, ld.copy())); d.lines.put(cat, c); });
+        }
+        return d;
+    }
+}
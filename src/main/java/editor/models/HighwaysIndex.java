@@ -0,0 +1,145 @@
+package editor.models;
+
+import java.util.*;
+
+/**
+ * Lookup tables built alongside a {@link HighwaysData}: stations by id, the stations each line declares
+ * (from {@code Station.lines}), the stations each branch lists (from {@code Branch.stations}) in both
+ * directions, and a per-branch hash of vertex coordinates. Edits that go through this class keep the
+ * model and the tables consistent.
+ */
+public class HighwaysIndex {
+    /** A branch of a line, as named in the model. */
+    public record Membership(String category, String line, String branch) {}
+
+    private record Coord(double x, double z) {}
+
+    private final Map<Integer, Station> byId = new HashMap<>();
+    private int maxId;
+    private final Map<String, Map<String, Set<Station>>> stationsByLine = new HashMap<>();
+    private final Map<LineData.Branch, Set<Integer>> branchMembers = new IdentityHashMap<>();
+    private final Map<Integer, Set<Membership>> branchesOfStation = new HashMap<>();
+    private final Map<LineData.Branch, Set<Coord>> vertexSets = new IdentityHashMap<>();
+
+    /**
+     * Indexes the model. Station ids in branch lists that Gson read as whole-number doubles are normalized
+     * to Integer on the way, so they are written back as {@code 5} rather than {@code 5.0}.
+     */
+    public HighwaysIndex(HighwaysData data) {
+        if (data.stations != null) for (Station s : data.stations) addStation(s);
+        if (data.lines != null) data.lines.forEach((cat, lines) -> lines.forEach((ln, ld) -> addLine(cat, ln, ld)));
+    }
+
+    public Station station(int id) { return byId.get(id); }
+    public int nextId() { return maxId + 1; }
+
+    public void addStation(Station s) {
+        byId.put(s.id, s);
+        maxId = Math.max(maxId, s.id);
+        link(s);
+    }
+
+    public void removeStation(Station s) {
+        if (byId.get(s.id) == s) byId.remove(s.id);
+        unlink(s);
+        if (s.id == maxId) maxId = byId.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+    }
+
+    /** Drops the line memberships declared by {@code s.lines}; call before replacing them. */
+    public void unlink(Station s) {
+        if (s.lines == null) return;
+        for (int i = 0; i < s.lines.size(); i++) {
+            Map<String, Set<Station>> c = stationsByLine.get(s.lines.category(i));
+            Set<Station> set = c == null ? null : c.get(s.lines.line(i));
+            if (set != null) { set.remove(s); if (set.isEmpty()) c.remove(s.lines.line(i)); }
+        }
+    }
+
+    /** Records the line memberships declared by {@code s.lines}. */
+    public void link(Station s) {
+        if (s.lines == null) return;
+        for (int i = 0; i < s.lines.size(); i++)
+            stationsByLine.computeIfAbsent(s.lines.category(i), k -> new HashMap<>()).computeIfAbsent(s.lines.line(i), k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(s);
+    }
+
+    /** Stations whose {@code lines} mention the given line. */
+    public Set<Station> stationsOn(String category, String line) {
+        Map<String, Set<Station>> c = stationsByLine.get(category);
+        Set<Station> set = c == null ? null : c.get(line);
+        return set == null ? Collections.emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    /** Branches whose {@code stations} list contains the id. */
+    public Set<Membership> branchesListing(int id) {
+        Set<Membership> set = branchesOfStation.get(id);
+        return set == null ? Collections.emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    public void addLine(String category, String line, LineData ld) {
+        if (ld.branches == null) return;
+        ld.branches.forEach((name, br) -> addBranch(category, line, name, br));
+    }
+
+    public void addBranch(String category, String line, String name, LineData.Branch br) {
+        Set<Integer> members = branchMembers.computeIfAbsent(br, k -> new HashSet<>());
+        if (br.stations == null) return;
+        Membership m = new Membership(category, line, name);
+        for (ListIterator<Object> it = br.stations.listIterator(); it.hasNext();) {
+            Object o = it.next();
+            if (!(o instanceof Number n) || n.doubleValue() != n.intValue()) continue;
+            if (!(o instanceof Integer)) it.set(n.intValue());
+            members.add(n.intValue());
+            branchesOfStation.computeIfAbsent(n.intValue(), k -> new HashSet<>()).add(m);
+        }
+    }
+
+    public void removeLine(String category, String line, LineData ld) {
+        if (ld.branches == null) return;
+        ld.branches.forEach((name, br) -> {
+            Set<Integer> members = branchMembers.remove(br);
+            vertexSets.remove(br);
+            if (members == null) return;
+            Membership m = new Membership(category, line, name);
+            for (Integer id : members) {
+                Set<Membership> set = branchesOfStation.get(id);
+                if (set != null && set.remove(m) && set.isEmpty()) branchesOfStation.remove(id);
+            }
+        });
+    }
+
+    public boolean branchContains(LineData.Branch br, int id) {
+        Set<Integer> members = branchMembers.get(br);
+        return members != null && members.contains(id);
+    }
+
+    /** Appends the station id to the branch's list unless it is already there. */
+    public boolean addToBranch(String category, String line, String name, LineData.Branch br, int id) {
+        if (!branchMembers.computeIfAbsent(br, k -> new HashSet<>()).add(id)) return false;
+        if (br.stations == null) br.stations = new ArrayList<>();
+        br.stations.add(id);
+        branchesOfStation.computeIfAbsent(id, k -> new HashSet<>()).add(new Membership(category, line, name));
+        return true;
+    }
+
+    /** Whether the branch has a vertex exactly at (x, z); the coordinate hash is built on first use. */
+    public boolean hasVertex(LineData.Branch br, double x, double z) {
+        return vertexSet(br).contains(new Coord(x, z));
+    }
+
+    public void addVertex(LineData.Branch br, double x, double z) {
+        br.vertices.add(x, z);
+        Set<Coord> set = vertexSets.get(br);
+        if (set != null) set.add(new Coord(x, z));
+    }
+
+    /** Call after a branch's vertices were replaced wholesale, e.g. by a path commit. */
+    public void verticesChanged(LineData.Branch br) { vertexSets.remove(br); }
+
+    private Set<Coord> vertexSet(LineData.Branch br) {
+        return vertexSets.computeIfAbsent(br, k -> {
+            Set<Coord> set = new HashSet<>();
+            if (br.vertices != null) for (int i = 0; i < br.vertices.size(); i++) set.add(new Coord(br.vertices.x(i), br.vertices.z(i)));
+            return set;
+        });
+    }
+}
@@ -1,4 +1,6 @@
 package editor.models;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
 
@@ -9,8 +11,22 @@ public class LineData {
     public int y;
     public Map<String, Branch> branches;
     
+    public LineData copy() {
+        LineData ld = new LineData();
+        ld.prefix = prefix; ld.code = code; ld.color = color; ld.y = y;
+        if (branches != null) { ld.branches = new LinkedHashMap<>(); branches.forEach((n, br) -> ld.branches.put(n, br.copy())); }
+        return ld;
+    }
+    
     public static class Branch {
-        public List<Double[]> vertices;
+        public Polyline vertices;
         public List<Object> stations;
+        
+        public Branch copy() {
+            Branch b = new Branch();
+            if (vertices != null) b.vertices = vertices.copy();
+            if (stations != null) b.stations = new ArrayList<>(stations);
+            return b;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,101 @@
+package editor.models;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Branch geometry as a flat {@code [x0, z0, x1, z1, ...]} array of primitive doubles.
+ * Serialized in the same {@code [[x, z], ...]} form the map JSON has always used.
+ */
+@JsonAdapter(Polyline.Adapter.class)
+public final class Polyline {
+    private double[] coords;
+    private int size;
+
+    public Polyline() { this(8); }
+    public Polyline(int capacity) { coords = new double[Math.max(2, capacity * 2)]; }
+
+    /** Polyline over a flat {@code [x0, z0, x1, z1, ...]} array, which it takes ownership of. */
+    public static Polyline wrap(double[] coords) {
+        if (coords.length % 2 != 0) throw new IllegalArgumentException("Odd coordinate count " + coords.length);
+        Polyline p = new Polyline(0);
+        if (coords.length > 0) p.coords = coords;
+        p.size = coords.length / 2;
+        return p;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public double x(int i) { check(i); return coords[2*i]; }
+    public double z(int i) { check(i); return coords[2*i+1]; }
+
+    public void set(int i, double x, double z) { check(i); coords[2*i] = x; coords[2*i+1] = z; }
+
+    public void add(double x, double z) { insert(size, x, z); }
+
+    public void insert(int i, double x, double z) {
+        if (i < 0 || i > size) throw new IndexOutOfBoundsException(i);
+        if (2*size + 2 > coords.length) coords = Arrays.copyOf(coords, Math.max(4, coords.length * 2));
+        System.arraycopy(coords, 2*i, coords, 2*i + 2, 2*(size - i));
+        coords[2*i] = x; coords[2*i+1] = z; size++;
+    }
+
+    public void remove(int i) {
+        check(i);
+        System.arraycopy(coords, 2*i + 2, coords, 2*i, 2*(size - i - 1));
+        size--;
+    }
+
+    public void clear() { size = 0; }
+
+    /** Replaces the contents with a copy of another polyline's vertices. */
+    public void setAll(Polyline o) {
+        if (coords.length < 2*o.size) coords = new double[2*o.size];
+        System.arraycopy(o.coords, 0, coords, 0, 2*o.size);
+        size = o.size;
+    }
+
+    public Polyline copy() { Polyline p = new Polyline(size); p.setAll(this); return p; }
+
+    /** Index of the first vertex exactly at (x, z), or -1. */
+    public int indexOf(double x, double z) {
+        for (int i = 0; i < size; i++) if (coords[2*i] == x && coords[2*i+1] == z) return i;
+        return -1;
+    }
+
+    public boolean contentEquals(Polyline o) {
+        return o != null && size == o.size && Arrays.equals(coords, 0, 2*size, o.coords, 0, 2*size);
+    }
+
+    private void check(int i) { if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i); }
+
+    public static final class Adapter extends TypeAdapter<Polyline> {
+        @Override public void write(JsonWriter out, Polyline p) throws IOException {
+            if (p == null) { out.nullValue(); return; }
+            out.beginArray();
+            for (int i = 0; i < p.size; i++) out.beginArray().value(p.coords[2*i]).value(p.coords[2*i+1]).endArray();
+            out.endArray();
+        }
+
+        @Override public Polyline read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) { in.nextNull(); return null; }
+            Polyline p = new Polyline();
+            in.beginArray();
+            while (in.hasNext()) {
+                in.beginArray();
+                double x = in.nextDouble(), z = in.nextDouble();
+                if (in.hasNext()) throw new JsonSyntaxException("Expected a [x, z] vertex at " + in.getPath());
+                in.endArray();
+                p.add(x, z);
+            }
+            in.endArray();
+            return p;
+        }
+    }
+}
@@ -1,6 +1,4 @@
 package editor.models;
-import java.util.Map;
-import java.util.List;
 
 public class Station {
     public String name;
@@ -12,12 +10,20 @@ public class Station {
     public Integer y1; // For elevators
     public Integer y2; // For elevators
     
-    // Complex mapping: Category -> LineName -> [Code, Branch]
-    public Map<String, Map<String, String[]>> lines;
-    public List<Object> areas; // Kept as object to preserve complex polygon data
+    // Category -> LineName -> [Code, Branch] in the JSON, held compactly
+    public StationLines lines;
+    public Areas areas;
+    
+    /** Copy with its own connections; areas are immutable and shared. */
+    public Station copy() {
+        Station s = new Station();
+        s.name = name; s.id = id; s.x = x; s.z = z; s.type = type; s.notes = notes; s.y1 = y1; s.y2 = y2; s.areas = areas;
+        if (lines != null) s.lines = lines.copy();
+        return s;
+    }
     
     @Override
     public String toString() {
         return name + " (ID: " + id + ")";
     }
-}
\ No newline at end of file
+}
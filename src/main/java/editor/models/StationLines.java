@@ -0,0 +1,212 @@
+package editor.models;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The lines a station declares, as exactly-sized arrays instead of a map of maps: connection {@code i} is
+ * {@link #ref(int)} plus the line's code and branch at that station. Category and line pairs are shared
+ * {@link LineRef} flyweights and the names in them, codes and branches are interned, so a station costs a few
+ * dozen bytes however many stations share its lines. Both pools hold their entries weakly, so what only a closed
+ * map used is collected with it. Serialized in the same
+ * {@code {"category": {"line": [code, branch]}}} form the map JSON has always used.
+ */
+@JsonAdapter(StationLines.Adapter.class)
+public final class StationLines {
+    private static final Map<String, WeakReference<String>> NAMES = new WeakHashMap<>();
+    private static final LineRef[] NO_REFS = {};
+    private static final String[] NO_NAMES = {};
+    /** Marks a connection whose details were {@code null} in the file. */
+    private static final String[] NULL_DETAILS = {};
+
+    /** Shared (category, line) pair; there is one instance per pair in use, so they can be compared with {@code ==}. */
+    public static final class LineRef {
+        private static final Map<String, Map<String, WeakReference<LineRef>>> POOL = new WeakHashMap<>();
+        public final String category, line;
+
+        private LineRef(String category, String line) { this.category = category; this.line = line; }
+
+        public static LineRef of(String category, String line) {
+            String c = intern(category), l = intern(line);
+            synchronized (POOL) {
+                Map<String, WeakReference<LineRef>> lines = POOL.computeIfAbsent(c, k -> new WeakHashMap<>());
+                WeakReference<LineRef> w = lines.get(l); LineRef r = w == null ? null : w.get();
+                if (r == null) lines.put(l, new WeakReference<>(r = new LineRef(c, l)));
+                return r;
+            }
+        }
+
+        /** {@code "category: line"}, the key lines go by elsewhere. */
+        public String key() { return category + ": " + line; }
+
+        @Override public String toString() { return key(); }
+    }
+
+    private LineRef[] refs = NO_REFS;
+    private String[] names = NO_NAMES; // code and branch of connection i at 2i and 2i+1
+    private String[][] raw; // details not of the usual [code, branch] form, kept as read; null while there are none
+    private int size;
+
+    /** The shared copy of {@code s}, for names that repeat across stations. */
+    public static String intern(String s) {
+        if (s == null) return null;
+        synchronized (NAMES) {
+            WeakReference<String> w = NAMES.get(s); String t = w == null ? null : w.get();
+            if (t == null) NAMES.put(t = s, new WeakReference<>(s));
+            return t;
+        }
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public LineRef ref(int i) { check(i); return refs[i]; }
+    public String category(int i) { return ref(i).category; }
+    public String line(int i) { return ref(i).line; }
+    public String code(int i) { check(i); return names[2*i]; }
+    public String branch(int i) { check(i); return names[2*i+1]; }
+
+    /** Details of connection {@code i} as the file has them, usually {@code [code, branch]}; a new array. */
+    public String[] details(int i) {
+        check(i);
+        String[] r = raw == null ? null : raw[i];
+        if (r == NULL_DETAILS) return null;
+        return r != null ? r.clone() : new String[]{names[2*i], names[2*i+1]};
+    }
+
+    public int indexOf(String category, String line) {
+        for (int i = 0; i < size; i++) if (refs[i].category.equals(category) && refs[i].line.equals(line)) return i;
+        return -1;
+    }
+
+    public boolean contains(String category, String line) { return indexOf(category, line) >= 0; }
+
+    /** Connects to a line, or changes the code and branch of an existing connection to it. */
+    public void put(String category, String line, String code, String branch) { set(category, line, intern(code), intern(branch), null); }
+
+    /** As {@link #put(String, String, String, String)}, with details in the file's form. */
+    public void put(String category, String line, String[] details) {
+        if (details != null && details.length == 2) { put(category, line, details[0], details[1]); return; }
+        String[] r = details == null ? NULL_DETAILS : details.clone();
+        for (int k = 0; k < r.length; k++) r[k] = intern(r[k]);
+        set(category, line, r.length > 0 ? r[0] : null, r.length > 1 ? r[1] : null, r);
+    }
+
+    private void set(String category, String line, String code, String branch, String[] details) {
+        int i = indexOf(category, line);
+        if (i < 0) {
+            i = size++;
+            refs = Arrays.copyOf(refs, size); names = Arrays.copyOf(names, 2*size);
+            if (raw != null) raw = Arrays.copyOf(raw, size);
+        }
+        refs[i] = LineRef.of(category, line); names[2*i] = code; names[2*i+1] = branch;
+        if (details != null && raw == null) raw = new String[size][];
+        if (raw != null) raw[i] = details;
+    }
+
+    public void remove(int i) {
+        check(i);
+        int tail = size - i - 1;
+        System.arraycopy(refs, i + 1, refs, i, tail); System.arraycopy(names, 2*i + 2, names, 2*i, 2*tail);
+        if (raw != null) System.arraycopy(raw, i + 1, raw, i, tail);
+        size--;
+        refs = Arrays.copyOf(refs, size); names = Arrays.copyOf(names, 2*size);
+        if (raw != null) raw = Arrays.copyOf(raw, size);
+    }
+
+    /** Orders connections by category, then line. */
+    public void sort() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> { int c = refs[a].category.compareTo(refs[b].category); return c != 0 ? c : refs[a].line.compareTo(refs[b].line); });
+        LineRef[] r = new LineRef[size]; String[] n = new String[2*size]; String[][] w = raw == null ? null : new String[size][];
+        for (int i = 0; i < size; i++) {
+            int j = order[i];
+            r[i] = refs[j]; n[2*i] = names[2*j]; n[2*i+1] = names[2*j+1];
+            if (w != null) w[i] = raw[j];
+        }
+        refs = r; names = n; raw = w;
+    }
+
+    /** Same connections with the same details, in any order. */
+    public boolean sameAs(StationLines o) {
+        if (o.size != size) return false;
+        for (int i = 0; i < size; i++) {
+            int j = o.indexOf(refs[i].category, refs[i].line);
+            if (j < 0 || !Arrays.equals(details(i), o.details(j))) return false;
+        }
+        return true;
+    }
+
+    public StationLines copy() {
+        StationLines c = new StationLines();
+        c.refs = refs.clone(); c.names = names.clone(); c.size = size;
+        if (raw != null) c.raw = raw.clone(); // detail arrays are never modified in place
+        return c;
+    }
+
+    private void check(int i) { if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i); }
+
+    public static final class Adapter extends TypeAdapter<StationLines> {
+        @Override public void write(JsonWriter out, StationLines l) throws IOException {
+            if (l == null) { out.nullValue(); return; }
+            out.beginObject();
+            // Grouped by category in order of first appearance, as the nested maps kept them
+            for (int i = 0; i < l.size; i++) {
+                String cat = l.refs[i].category;
+                boolean seen = false;
+                for (int k = 0; k < i && !seen; k++) seen = l.refs[k].category.equals(cat);
+                if (seen) continue;
+                out.name(cat).beginObject();
+                for (int j = i; j < l.size; j++) if (l.refs[j].category.equals(cat)) {
+                    out.name(l.refs[j].line);
+                    String[] det = l.details(j);
+                    if (det == null) { out.nullValue(); continue; }
+                    out.beginArray();
+                    for (String s : det) out.value(s);
+                    out.endArray();
+                }
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override public StationLines read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) { in.nextNull(); return null; }
+            StationLines l = new StationLines();
+            in.beginObject();
+            while (in.hasNext()) {
+                String cat = in.nextName();
+                if (in.peek() == JsonToken.NULL) { in.nextNull(); continue; }
+                in.beginObject();
+                while (in.hasNext()) {
+                    String line = in.nextName();
+                    if (in.peek() == JsonToken.NULL) { in.nextNull(); l.put(cat, line, null); continue; }
+                    in.beginArray();
+                    String code = null, branch = null; String[] more = null; int n = 0;
+                    while (in.hasNext()) {
+                        String s = in.peek() == JsonToken.NULL ? nextNull(in) : in.nextString();
+                        if (n == 0) code = s; else if (n == 1) branch = s;
+                        else { if (more == null) more = new String[]{code, branch}; more = Arrays.copyOf(more, n + 1); more[n] = s; }
+                        n++;
+                    }
+                    in.endArray();
+                    if (n == 2) l.put(cat, line, code, branch);
+                    else l.put(cat, line, more != null ? more : n == 1 ? new String[]{code} : new String[0]);
+                }
+                in.endObject();
+            }
+            in.endObject();
+            return l;
+        }
+
+        private static String nextNull(JsonReader in) throws IOException { in.nextNull(); return null; }
+    }
+}
@@ -0,0 +1,68 @@
+package editor.perf;
+
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder events for the editor's main operations, under the "Highway Editor" category. Record with
+ * {@code -XX:StartFlightRecording} or from JMC. While no recording is running an event costs one allocation
+ * that escape analysis usually removes, and fields are filled in only when {@link Event#shouldCommit()}.
+ */
+public final class EditorEvents {
+    private EditorEvents() {}
+
+    @Name("editor.Load") @Label("Load Map") @Category("Highway Editor")
+    public static class Load extends Event {
+        @Label("File") public String file;
+        @Label("Size") @DataAmount public long bytes;
+        @Label("Stations") public int stations;
+        @Label("Lines") public int lines;
+        @Label("From Binary Cache") public boolean fromCache;
+    }
+
+    @Name("editor.Save") @Label("Save Map") @Category("Highway Editor")
+    public static class Save extends Event {
+        @Label("File") public String file;
+        @Label("Size") @DataAmount public long bytes;
+        @Label("Pretty Printed") public boolean pretty;
+        @Label("Binary Cache Written") public boolean cache;
+    }
+
+    @Name("editor.Paint") @Label("Paint Map") @Category("Highway Editor")
+    public static class Paint extends Event {
+        @Label("Width") public int width;
+        @Label("Height") public int height;
+        @Label("Tiles Drawn") public int tilesDrawn;
+        @Label("Tiles Rendered") public int tilesRendered;
+        @Label("Branches Drawn") public int pathsDrawn;
+        @Label("Branches Culled") public int pathsCulled;
+        @Label("Vertices Drawn") public int verticesDrawn;
+        @Label("Stations Drawn") public int stationsDrawn;
+    }
+
+    @Name("editor.FindAt") @Label("Pick Map Object") @Category("Highway Editor")
+    public static class FindAt extends Event {
+        @Label("Candidates Tested") public int tested;
+        @Label("Hit") public String hit;
+    }
+
+    @Name("editor.Search") @Label("Search Lists") @Category("Highway Editor")
+    public static class Search extends Event {
+        @Label("Query") public String query;
+        @Label("Index Rebuilt") public boolean rebuilt;
+        @Label("Refined") public boolean refined;
+        @Label("Station Hits") public int stationHits;
+        @Label("Line Hits") public int lineHits;
+    }
+
+    @Name("editor.RefreshLists") @Label("Refresh Lists") @Category("Highway Editor")
+    public static class RefreshLists extends Event {
+        @Label("Stations") public int stations;
+        @Label("Lines") public int lines;
+    }
+
+    @Name("editor.ApplyChanges") @Label("Apply Changes") @Category("Highway Editor")
+    public static class ApplyChanges extends Event {
+        @Label("Target") public String target;
+        @Label("Connections") public int connections;
+    }
+}
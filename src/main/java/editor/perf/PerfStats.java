@@ -0,0 +1,17 @@
+package editor.perf;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Latest duration of each instrumented operation, for the map's performance overlay. */
+public final class PerfStats {
+    private static final Map<String, Long> LATEST = new ConcurrentHashMap<>();
+
+    private PerfStats() {}
+
+    public static void record(String operation, long nanos) { LATEST.put(operation, nanos); }
+
+    /** Operation name to its latest duration in nanoseconds, sorted by name. */
+    public static Map<String, Long> latest() { return new TreeMap<>(LATEST); }
+}
@@ -0,0 +1,304 @@
+package editor.route;
+
+import editor.models.*;
+import java.util.*;
+
+/**
+ * Travel graph over the network for shortest-route queries. There is one node per (station, line) the station
+ * is on. Ride edges join stations that are consecutive along a branch, weighted by the length of the branch
+ * path between them plus each station's distance from the path. Changing lines at a station costs a transfer
+ * penalty that depends on the station type and, for elevators, on the height climbed. Lines are rebuilt individually when they or their stations are edited.
+ * <p>
+ * Before the first query after an edit, runs of stations without transfers are collapsed into chains with
+ * shortcuts between their ends. Queries then run A* over the junctions only, with the straight-line distance as
+ * heuristic, which never overestimates since every ride is at least that long.
+ */
+public class RouteGraph {
+    /** Transfer penalties, in blocks of travel. */
+    public static final double TRANSFER = 100, JUNCTION_TRANSFER = 25;
+
+    /** One ride between consecutive stations of a line, with its path geometry. */
+    public record Leg(Station from, Station to, String lineKey, String branch, double length, Polyline path) {}
+
+    /** A found route: its legs in travel order, total ride length and total cost including transfers. */
+    public record Route(List<Leg> legs, double length, double cost, int transfers) {
+        public Station from() { return legs.get(0).from(); }
+        public Station to() { return legs.get(legs.size() - 1).to(); }
+    }
+
+    private static final class Node {
+        final Station station; final String lineKey; final int id;
+        final List<Edge> edges = new ArrayList<>(2);
+        final List<Shortcut> shortcuts = new ArrayList<>(2);
+        boolean core;
+        Chain chain; // for stations inside a chain, with their index along it
+        int at;
+        Node(Station station, String lineKey, int id) { this.station = station; this.lineKey = lineKey; this.id = id; }
+    }
+
+    private record Edge(Node to, Leg leg) {}
+
+    /** Rides standing in for all the legs between two junctions, or between a station and its chain's end. */
+    private record Shortcut(Node to, double length, List<Leg> legs) {}
+
+    private record Entry(Node node, double f) implements Comparable<Entry> {
+        public int compareTo(Entry o) { return Double.compare(f, o.f); }
+    }
+
+    /** Run of transfer-free stations between two junctions; rides i to i+1 are {@code forward.get(i)}. */
+    private static final class Chain {
+        final List<Node> nodes = new ArrayList<>();
+        final List<Leg> forward = new ArrayList<>(), backward = new ArrayList<>();
+        double[] pos;
+
+        List<Leg> legs(int from, int to) {
+            if (from <= to) return forward.subList(from, to);
+            List<Leg> out = new ArrayList<>(from - to);
+            for (int i = from - 1; i >= to; i--) out.add(backward.get(i));
+            return out;
+        }
+    }
+
+    private final HighwaysData data;
+    private final HighwaysIndex index;
+    private final Map<Station, Map<String, Node>> nodesByStation = new IdentityHashMap<>();
+    private final Map<String, List<Node>> nodesByLine = new HashMap<>();
+    private final List<Node> nodes = new ArrayList<>();
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+    // Per-query scratch, reset by bumping the stamp instead of clearing
+    private int[] seen = new int[0], closed = new int[0];
+    private double[] cost = new double[0];
+    private Shortcut[] via = new Shortcut[0];
+    private Node[] viaNode = new Node[0];
+    private int stamp;
+    private boolean contracted;
+
+    public RouteGraph(HighwaysData data, HighwaysIndex index) {
+        this.data = data; this.index = index;
+        if (data.lines != null) data.lines.forEach((cat, m) -> m.keySet().forEach(ln -> lineChanged(cat, ln)));
+    }
+
+    /** Rebuilds one line's nodes and rides, e.g. after its path was edited; also handles added lines. */
+    public void lineChanged(String category, String line) {
+        String key = category + ": " + line;
+        lineRemoved(key);
+        Map<String, LineData> cat = data.lines == null ? null : data.lines.get(category);
+        LineData ld = cat == null ? null : cat.get(line);
+        if (ld == null || ld.branches == null) return;
+        contracted = false;
+        ld.branches.forEach((name, br) -> addBranch(key, name, br));
+    }
+
+    public void lineRemoved(String category, String line) { lineRemoved(category + ": " + line); }
+
+    /** After a station moved or was re-connected: rebuilds every line whose branches list it. */
+    public void stationChanged(Station s) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (HighwaysIndex.Membership m : index.branchesListing(s.id)) keys.add(m.category() + ": " + m.line());
+        Map<String, Node> stale = nodesByStation.get(s);
+        if (stale != null) keys.addAll(stale.keySet());
+        for (String key : keys) { int sep = key.indexOf(": "); lineChanged(key.substring(0, sep), key.substring(sep + 2)); }
+    }
+
+    public void stationRemoved(Station s) { stationChanged(s); }
+
+    /** Cost of changing lines at the station. */
+    public static double transferCost(Station s) {
+        if (s.type == null) return TRANSFER;
+        if (s.type.startsWith("elev")) return TRANSFER + (s.y1 != null && s.y2 != null ? Math.abs(s.y1 - s.y2) : 0);
+        if (s.type.contains("jct") || s.type.contains("inter")) return JUNCTION_TRANSFER;
+        return TRANSFER;
+    }
+
+    /** Cheapest route between two stations, or null if they are not connected. */
+    public Route route(Station from, Station to) {
+        Map<String, Node> starts = nodesByStation.get(from), goals = nodesByStation.get(to);
+        if (starts == null || goals == null || from == to) return null;
+        contract();
+        int n = nodes.size();
+        if (seen.length < n) { seen = new int[n]; closed = new int[n]; cost = new double[n]; via = new Shortcut[n]; viaNode = new Node[n]; stamp = 0; }
+        int q = ++stamp;
+        // Stations between junctions are entered and left through the ends of their chain
+        Map<Node, Shortcut> exits = new HashMap<>();
+        double best = Double.POSITIVE_INFINITY;
+        List<Leg> bestLegs = null;
+        Node bestExit = null;
+        for (Node g : goals.values()) {
+            if (g.chain == null) { exits.put(g, new Shortcut(g, 0, List.of())); continue; }
+            Chain c = g.chain;
+            exit(exits, c.nodes.get(0), c.pos[g.at], c.legs(0, g.at));
+            exit(exits, c.nodes.get(c.nodes.size() - 1), c.pos[c.pos.length - 1] - c.pos[g.at], c.legs(c.pos.length - 1, g.at));
+        }
+        PriorityQueue<Entry> open = new PriorityQueue<>();
+        for (Node s : starts.values()) {
+            if (s.chain == null) { seed(open, s, 0, List.of(), to, q); continue; }
+            Chain c = s.chain;
+            seed(open, c.nodes.get(0), c.pos[s.at], c.legs(s.at, 0), to, q);
+            seed(open, c.nodes.get(c.nodes.size() - 1), c.pos[c.pos.length - 1] - c.pos[s.at], c.legs(s.at, c.pos.length - 1), to, q);
+            for (Node g : goals.values()) if (g.chain == c && Math.abs(c.pos[g.at] - c.pos[s.at]) < best) {
+                best = Math.abs(c.pos[g.at] - c.pos[s.at]); bestLegs = c.legs(s.at, g.at); bestExit = null;
+            }
+        }
+        while (!open.isEmpty() && open.peek().f < best) {
+            Node u = open.poll().node;
+            if (closed[u.id] == q) continue;
+            closed[u.id] = q;
+            Shortcut exit = exits.get(u);
+            if (exit != null && cost[u.id] + exit.length < best) { best = cost[u.id] + exit.length; bestExit = u; bestLegs = exit.legs; }
+            for (Shortcut sc : u.shortcuts) relax(open, u, sc.to, cost[u.id] + sc.length, sc, to, q);
+            double t = transferCost(u.station);
+            for (Node o : nodesByStation.get(u.station).values()) if (o != u) relax(open, u, o, cost[u.id] + t, null, to, q);
+        }
+        return bestLegs == null ? null : unwind(bestExit, bestLegs, best);
+    }
+
+    private static void exit(Map<Node, Shortcut> exits, Node end, double length, List<Leg> legs) {
+        Shortcut old = exits.get(end);
+        if (old == null || old.length > length) exits.put(end, new Shortcut(end, length, legs));
+    }
+
+    private void seed(PriorityQueue<Entry> open, Node n, double c, List<Leg> legs, Station goal, int q) {
+        if (seen[n.id] == q && cost[n.id] <= c) return;
+        seen[n.id] = q; cost[n.id] = c; via[n.id] = new Shortcut(n, c, legs); viaNode[n.id] = null;
+        open.add(new Entry(n, c + h(n, goal)));
+    }
+
+    private void relax(PriorityQueue<Entry> open, Node from, Node v, double c, Shortcut sc, Station goal, int q) {
+        if (closed[v.id] == q || (seen[v.id] == q && cost[v.id] <= c)) return;
+        seen[v.id] = q; cost[v.id] = c; via[v.id] = sc; viaNode[v.id] = from;
+        open.add(new Entry(v, c + h(v, goal)));
+    }
+
+    private static double h(Node n, Station goal) { return Math.hypot(n.station.x - goal.x, n.station.z - goal.z); }
+
+    /** Joins the legs into the exit's chain, the shortcuts and transfers back to a seed, and the seed's legs. */
+    private Route unwind(Node exit, List<Leg> tail, double total) {
+        List<List<Leg>> parts = new ArrayList<>();
+        parts.add(tail);
+        int transfers = 0;
+        for (Node n = exit; n != null; n = viaNode[n.id]) {
+            if (via[n.id] != null) parts.add(via[n.id].legs); else transfers++;
+        }
+        List<Leg> legs = new ArrayList<>();
+        double length = 0;
+        for (int i = parts.size() - 1; i >= 0; i--) for (Leg l : parts.get(i)) { legs.add(l); length += l.length; }
+        return legs.isEmpty() ? null : new Route(legs, length, total, transfers);
+    }
+
+    /**
+     * Collapses runs of stations that have no transfer and exactly two neighbours into chains and joins the
+     * stations at either end with shortcuts, so a query only searches junctions. Redone lazily after edits.
+     */
+    private void contract() {
+        if (contracted) return;
+        for (Node n : nodes) if (n != null) {
+            n.core = n.edges.size() != 2 || n.edges.get(0).to == n.edges.get(1).to || nodesByStation.get(n.station).size() > 1;
+            n.chain = null; n.shortcuts.clear();
+        }
+        for (Node n : nodes) if (n != null && n.core) shortcuts(n);
+        // Rings without a single junction: make any one of their stations an end and walk from there
+        for (Node n : nodes) if (n != null && !n.core && n.chain == null) { n.core = true; shortcuts(n); }
+        contracted = true;
+    }
+
+    private void shortcuts(Node u) {
+        for (Edge e : u.edges) {
+            if (e.to.core) { u.shortcuts.add(new Shortcut(e.to, e.leg.length, List.of(e.leg))); continue; }
+            if (e.to.chain != null) continue; // walked from its other end already
+            Chain c = new Chain();
+            c.nodes.add(u);
+            Node prev = u, cur = e.to;
+            Edge step = e;
+            while (true) {
+                c.forward.add(step.leg);
+                for (Edge b : cur.edges) if (b.to == prev) { c.backward.add(b.leg); break; }
+                if (cur.core) break;
+                cur.chain = c; cur.at = c.nodes.size(); c.nodes.add(cur);
+                step = cur.edges.get(0).to == prev ? cur.edges.get(1) : cur.edges.get(0);
+                prev = cur; cur = step.to;
+            }
+            c.nodes.add(cur);
+            c.pos = new double[c.nodes.size()];
+            for (int i = 1; i < c.pos.length; i++) c.pos[i] = c.pos[i-1] + c.forward.get(i-1).length;
+            if (cur == u) continue; // a loop back to where it started is never a shortcut
+            u.shortcuts.add(new Shortcut(cur, c.pos[c.pos.length - 1], c.legs(0, c.pos.length - 1)));
+            cur.shortcuts.add(new Shortcut(u, c.pos[c.pos.length - 1], c.legs(c.pos.length - 1, 0)));
+        }
+    }
+
+    private void lineRemoved(String key) {
+        contracted = false;
+        List<Node> old = nodesByLine.remove(key);
+        if (old == null) return;
+        for (Node n : old) {
+            Map<String, Node> m = nodesByStation.get(n.station);
+            if (m != null && m.remove(key) != null && m.isEmpty()) nodesByStation.remove(n.station);
+            nodes.set(n.id, null);
+            freeIds.push(n.id);
+        }
+    }
+
+    private Node node(String key, Station s) {
+        return nodesByStation.computeIfAbsent(s, k -> new HashMap<>()).computeIfAbsent(key, k -> {
+            Integer id = freeIds.poll();
+            Node n = new Node(s, key, id != null ? id : nodes.size());
+            if (id != null) nodes.set(id, n); else nodes.add(n);
+            nodesByLine.computeIfAbsent(key, x -> new ArrayList<>()).add(n);
+            return n;
+        });
+    }
+
+    /** Orders the branch's stations by where they sit along its path and joins neighbours with rides. */
+    private void addBranch(String key, String name, LineData.Branch br) {
+        Polyline v = br.vertices;
+        if (br.stations == null || v == null || v.size() < 2) return;
+        double[] arc = new double[v.size()];
+        for (int i = 1; i < v.size(); i++) arc[i] = arc[i-1] + Math.hypot(v.x(i) - v.x(i-1), v.z(i) - v.z(i-1));
+        List<Station> stations = new ArrayList<>();
+        List<double[]> positions = new ArrayList<>();
+        for (Object o : br.stations) {
+            if (!(o instanceof Number num)) continue;
+            Station s = index.station(num.intValue());
+            if (s == null) continue;
+            stations.add(s); positions.add(locate(v, arc, s.x, s.z));
+        }
+        Integer[] order = new Integer[stations.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(i -> positions.get(i)[0]));
+        for (int k = 1; k < order.length; k++) {
+            Station a = stations.get(order[k-1]), b = stations.get(order[k]);
+            if (a == b) continue;
+            double[] pa = positions.get(order[k-1]), pb = positions.get(order[k]);
+            Polyline path = slice(v, pa, pb);
+            // Stations may sit off the path; counting the way to and from it keeps every ride at least the straight line
+            double len = Math.hypot(a.x - pa[2], a.z - pa[3]) + pb[0] - pa[0] + Math.hypot(pb[2] - b.x, pb[3] - b.z);
+            Node na = node(key, a), nb = node(key, b);
+            na.edges.add(new Edge(nb, new Leg(a, b, key, name, len, path)));
+            Polyline back = new Polyline(path.size());
+            for (int i = path.size() - 1; i >= 0; i--) back.add(path.x(i), path.z(i));
+            nb.edges.add(new Edge(na, new Leg(b, a, key, name, len, back)));
+        }
+    }
+
+    /** Arc length of the point's projection onto the path, the segment it falls on, and the projected point. */
+    private static double[] locate(Polyline v, double[] arc, double x, double z) {
+        int exact = v.indexOf(x, z);
+        if (exact >= 0) return new double[]{arc[exact], Math.min(exact, v.size() - 2), x, z};
+        double best = Double.MAX_VALUE; double[] out = null;
+        for (int i = 0; i + 1 < v.size(); i++) {
+            double ax = v.x(i), az = v.z(i), dx = v.x(i+1) - ax, dz = v.z(i+1) - az;
+            double l2 = dx*dx + dz*dz, t = l2 == 0 ? 0 : Math.max(0, Math.min(1, ((x-ax)*dx + (z-az)*dz) / l2));
+            double px = ax + t*dx, pz = az + t*dz, d = Math.hypot(px - x, pz - z);
+            if (d < best) { best = d; out = new double[]{arc[i] + t * Math.sqrt(l2), i, px, pz}; }
+        }
+        return out;
+    }
+
+    private static Polyline slice(Polyline v, double[] a, double[] b) {
+        Polyline p = new Polyline();
+        p.add(a[2], a[3]);
+        for (int i = (int) a[1] + 1; i <= (int) b[1]; i++) if (v.x(i) != p.x(p.size()-1) || v.z(i) != p.z(p.size()-1)) p.add(v.x(i), v.z(i));
+        if (b[2] != p.x(p.size()-1) || b[3] != p.z(p.size()-1)) p.add(b[2], b[3]);
+        return p;
+    }
+}